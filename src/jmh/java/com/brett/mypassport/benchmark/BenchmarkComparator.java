@@ -0,0 +1,89 @@
+package com.brett.mypassport.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares a JMH JSON result file against a stored baseline and exits non-zero when any benchmark
+ * regressed by more than the threshold. Benchmarks missing from the baseline are reported but never fail.
+ * <p>
+ * Usage: {@code BenchmarkComparator <result.json> <baseline.json> <threshold>}, threshold as a fraction (0.10 = 10%).
+ */
+public final class BenchmarkComparator {
+
+    private BenchmarkComparator() {
+        // Prevent instantiation
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: BenchmarkComparator <result.json> <baseline.json> <threshold>");
+            System.exit(2);
+        }
+        File baselineFile = new File(args[1]);
+        if (!baselineFile.isFile()) {
+            System.err.println("Baseline " + baselineFile + " not found; copy a jmh-result.json there to create one.");
+            System.exit(2);
+        }
+        double threshold = Double.parseDouble(args[2]);
+        Map<String, Score> results = read(new File(args[0]));
+        Map<String, Score> baseline = read(baselineFile);
+
+        int regressions = 0;
+        System.out.printf("%-90s %14s %14s %9s%n", "Benchmark", "Baseline", "Current", "Change");
+        for (Map.Entry<String, Score> entry : new TreeMap<>(results).entrySet()) {
+            Score current = entry.getValue();
+            Score previous = baseline.get(entry.getKey());
+            if (previous == null) {
+                System.out.printf("%-90s %14s %14.3f %9s%n", entry.getKey(), "-", current.value, "new");
+                continue;
+            }
+            // Positive change is always an improvement, whichever direction the mode counts in
+            double change = current.higherIsBetter
+                    ? (current.value - previous.value) / previous.value
+                    : (previous.value - current.value) / previous.value;
+            boolean regressed = change < -threshold;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-90s %14.3f %14.3f %+8.1f%%%s%n", entry.getKey(), previous.value, current.value,
+                    change * 100, regressed ? "  REGRESSION" : "");
+        }
+
+        if (regressions > 0) {
+            System.err.printf("%d benchmark(s) regressed by more than %.0f%% against %s%n", regressions, threshold * 100, baselineFile);
+            System.exit(1);
+        }
+        System.out.printf("No benchmark regressed by more than %.0f%%%n", threshold * 100);
+    }
+
+    private static Map<String, Score> read(File file) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (JsonNode run : new ObjectMapper().readTree(file)) {
+            StringBuilder key = new StringBuilder(run.path("benchmark").asText());
+            JsonNode params = run.path("params");
+            Iterator<String> names = params.fieldNames();
+            while (names.hasNext()) {
+                String name = names.next();
+                key.append(key.indexOf("(") < 0 ? " (" : ", ").append(name).append('=').append(params.path(name).asText());
+            }
+            if (key.indexOf("(") >= 0) {
+                key.append(')');
+            }
+            String mode = run.path("mode").asText();
+            boolean higherIsBetter = "thrpt".equals(mode);
+            scores.put(key.toString(), new Score(run.path("primaryMetric").path("score").asDouble(), higherIsBetter));
+        }
+        return scores;
+    }
+
+    private record Score(double value, boolean higherIsBetter) {
+    }
+}
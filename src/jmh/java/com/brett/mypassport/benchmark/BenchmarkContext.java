@@ -0,0 +1,132 @@
+package com.brett.mypassport.benchmark;
+
+import com.brett.mypassport.MyPassportApplication;
+import com.brett.mypassport.dto.LoginRequest;
+import com.brett.mypassport.entity.Permission;
+import com.brett.mypassport.entity.Role;
+import com.brett.mypassport.entity.User;
+import com.brett.mypassport.repository.PermissionRepository;
+import com.brett.mypassport.repository.RoleRepository;
+import com.brett.mypassport.repository.UserRepository;
+import com.brett.mypassport.service.UserService;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Boots the application once per benchmark fork against an in-memory H2 database.
+ * {@code DatabaseSeeder} provides the standard users and roles; {@link #seedSevWatchPermissions()} adds a
+ * realistic set of path permissions on top, so permission checks scan more than a handful of patterns.
+ */
+final class BenchmarkContext {
+
+    static final String ADMIN_EMAIL = "admin@example.com";
+    static final String ADMIN_PASSWORD = "admin123";
+    static final String SEVWATCH = "SevWatch";
+
+    private static ConfigurableApplicationContext context;
+    private static String adminToken;
+
+    private BenchmarkContext() {
+        // Prevent instantiation
+    }
+
+    static synchronized ConfigurableApplicationContext get() {
+        if (context == null) {
+            context = new SpringApplicationBuilder(MyPassportApplication.class)
+                    .web(WebApplicationType.NONE)
+                    .profiles("benchmark")
+                    // Command-line arguments, so they override application.yaml
+                    .run(
+                            "--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1;MODE=MySQL",
+                            "--spring.datasource.username=sa",
+                            "--spring.datasource.password=",
+                            "--spring.jpa.hibernate.ddl-auto=create-drop",
+                            "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                            // SystemController needs a Flyway bean, but the migrations are MySQL specific; Hibernate builds the schema instead
+                            "--spring.flyway.locations=classpath:db/benchmark",
+                            "--spring.mail.host=localhost",
+                            "--spring.mail.username=benchmark@example.com",
+                            "--spring.task.scheduling.enabled=false",
+                            // The backfill is MySQL SQL and there are no legacy rows to hash
+                            "--app.tokens.hash-backfill.enabled=false",
+                            "--app.upload.avatar-path=${java.io.tmpdir}/mypassport-benchmark/",
+                            "--app.upload.avatar-url-prefix=http://localhost/avatars/",
+                            "--logging.level.root=WARN");
+            seedSevWatchPermissions();
+            LoginRequest login = new LoginRequest();
+            login.setEmail(ADMIN_EMAIL);
+            login.setPassword(ADMIN_PASSWORD);
+            adminToken = context.getBean(UserService.class).login(login, "127.0.0.1", "JMH").getToken();
+        }
+        return context;
+    }
+
+    /**
+     * @return An access token issued to the seeded admin and registered in the token table
+     */
+    static String adminToken() {
+        get();
+        return adminToken;
+    }
+
+    /**
+     * Roles and permissions are lazy associations, so lookups that walk them run inside a read-only transaction.
+     */
+    static TransactionTemplate readOnlyTransaction() {
+        TransactionTemplate template = new TransactionTemplate(get().getBean(PlatformTransactionManager.class));
+        template.setReadOnly(true);
+        return template;
+    }
+
+    static synchronized void close() {
+        if (context != null) {
+            context.close();
+            context = null;
+        }
+    }
+
+    private static void seedSevWatchPermissions() {
+        PermissionRepository permissionRepository = context.getBean(PermissionRepository.class);
+        RoleRepository roleRepository = context.getBean(RoleRepository.class);
+        UserRepository userRepository = context.getBean(UserRepository.class);
+
+        // Mix of exact, method-scoped, single-segment and multi-segment wildcard entries
+        List<Permission> permissions = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            permissions.add(permission("/api/v1/sev/module" + i + "/**"));
+            permissions.add(permission("GET:/api/v1/sev/reports" + i + "/*"));
+            permissions.add(permission("POST:/api/v1/sev/alerts" + i + "/{id}/ack"));
+            permissions.add(permission("/api/v1/sev/settings" + i));
+            permissions.add(permission("sev:feature" + i + ":view"));
+        }
+        permissionRepository.saveAll(permissions);
+
+        Role operator = new Role();
+        operator.setName("OPERATOR");
+        operator.setSysCode(SEVWATCH);
+        operator.setDescription("SevWatch Operator");
+        operator.setPermissions(new HashSet<>(permissions));
+        Role savedOperator = roleRepository.save(operator);
+
+        new TransactionTemplate(context.getBean(PlatformTransactionManager.class)).executeWithoutResult(status -> {
+            User admin = userRepository.findByUsername(ADMIN_EMAIL).orElseThrow();
+            admin.getRoles().add(savedOperator);
+        });
+    }
+
+    private static Permission permission(String name) {
+        Permission permission = new Permission();
+        permission.setName(name);
+        permission.setSysCode(SEVWATCH);
+        permission.setModule("SEVWATCH_BENCHMARK");
+        permission.setDescription("Benchmark permission " + name);
+        return permission;
+    }
+}
@@ -0,0 +1,61 @@
+package com.brett.mypassport.benchmark;
+
+import com.brett.mypassport.common.JwtUtil;
+import com.brett.mypassport.config.JwtKeyRing;
+import com.brett.mypassport.config.JwtSigningAlgorithm;
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token issuance and validation through {@link JwtUtil}, with an ephemeral key of each algorithm.
+ * {@code validateToken} is the steady state (claims cache hit); {@code verifyToken} always checks the signature.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JwtUtilBenchmark {
+
+    @Param({"RS256", "ES256", "EdDSA"})
+    private JwtSigningAlgorithm algorithm;
+
+    private JwtUtil jwtUtil;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        JwtKeyRing keyRing = new JwtKeyRing();
+        ReflectionTestUtils.setField(keyRing, "algorithm", algorithm);
+        keyRing.init();
+
+        jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "jwtKeyRing", keyRing);
+        ReflectionTestUtils.setField(jwtUtil, "claimsCacheMaxSize", 10_000L);
+        jwtUtil.init();
+        token = jwtUtil.generateToken("benchmark-user");
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtUtil.generateToken("benchmark-user");
+    }
+
+    @Benchmark
+    public Boolean validateToken() {
+        return jwtUtil.validateToken(token, "benchmark-user");
+    }
+
+    @Benchmark
+    public String verifyToken() {
+        return jwtUtil.extractClaim(token, Claims::getSubject);
+    }
+}
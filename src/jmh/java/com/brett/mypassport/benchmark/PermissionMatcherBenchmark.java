@@ -0,0 +1,57 @@
+package com.brett.mypassport.benchmark;
+
+import com.brett.mypassport.common.PermissionMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PermissionMatcher} path checks against permission sets of growing size; with the tries the cost
+ * should stay flat as the number of permissions grows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PermissionMatcherBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int permissionCount;
+
+    private PermissionMatcher matcher;
+
+    @Setup
+    public void setUp() {
+        List<String> permissions = new ArrayList<>();
+        for (int i = 0; i < permissionCount; i++) {
+            permissions.add("feature" + i + ":view");
+            permissions.add("GET:/api/v1/feature" + i + "/**");
+            permissions.add("/api/v1/feature" + i + "/reports");
+        }
+        permissions.add("/api/v1/sev/**");
+        matcher = PermissionMatcher.compile(permissions);
+    }
+
+    @Benchmark
+    public boolean exactPermission() {
+        return matcher.hasPermission("feature7:view");
+    }
+
+    @Benchmark
+    public boolean wildcardPath() {
+        return matcher.matchesPath("/api/v1/sev/incidents/42/timeline", "GET");
+    }
+
+    @Benchmark
+    public boolean deniedPath() {
+        return matcher.matchesPath("/api/v1/unknown/incidents/42", "DELETE");
+    }
+}
@@ -0,0 +1,60 @@
+package com.brett.mypassport.benchmark;
+
+import com.brett.mypassport.config.GlobalResponseAdvice;
+import com.brett.mypassport.controller.AuthController;
+import com.brett.mypassport.dto.PermissionCheckRequest;
+import com.brett.mypassport.dto.PermissionCheckResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link GlobalResponseAdvice} wrapping an object body (the common case) and a String body
+ * (which the advice serializes itself), followed by the JSON write the converter would do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ResponseAdviceBenchmark {
+
+    private GlobalResponseAdvice advice;
+    private ObjectMapper objectMapper;
+    private MethodParameter returnType;
+    private PermissionCheckResponse body;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        objectMapper = new ObjectMapper();
+        advice = new GlobalResponseAdvice();
+        ReflectionTestUtils.setField(advice, "objectMapper", objectMapper);
+        returnType = new MethodParameter(AuthController.class.getMethod("checkPermission",
+                PermissionCheckRequest.class), -1);
+        body = new PermissionCheckResponse(true, true, "admin@example.com", "Permission granted");
+    }
+
+    @Benchmark
+    public String wrapObject() throws Exception {
+        Object wrapped = advice.supports(returnType, MappingJackson2HttpMessageConverter.class)
+                ? advice.beforeBodyWrite(body, returnType, MediaType.APPLICATION_JSON,
+                        MappingJackson2HttpMessageConverter.class, null, null)
+                : body;
+        return objectMapper.writeValueAsString(wrapped);
+    }
+
+    @Benchmark
+    public Object wrapString() {
+        return advice.beforeBodyWrite("Verification code sent", returnType, MediaType.APPLICATION_JSON,
+                MappingJackson2HttpMessageConverter.class, null, null);
+    }
+}
@@ -0,0 +1,59 @@
+package com.brett.mypassport.benchmark;
+
+import com.brett.mypassport.config.JwtSigningAlgorithm;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.KeyPair;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sign and verify throughput of each {@link JwtSigningAlgorithm}, using the same JJWT calls as {@code JwtUtil}.
+ * Run with {@code mvn -Pbenchmark verify -DskipTests -Djmh.include=SigningAlgorithmBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SigningAlgorithmBenchmark {
+
+    @Param({"RS256", "ES256", "EdDSA"})
+    private JwtSigningAlgorithm algorithm;
+
+    private KeyPair keyPair;
+    private JwtParser parser;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        keyPair = algorithm.newKeyPair();
+        parser = Jwts.parser().verifyWith(keyPair.getPublic()).build();
+        token = sign();
+    }
+
+    @Benchmark
+    public String sign() {
+        long now = System.currentTimeMillis();
+        return Jwts.builder()
+                .header().keyId("benchmark").and()
+                .subject("benchmark-user")
+                .issuedAt(new Date(now))
+                .expiration(new Date(now + TimeUnit.HOURS.toMillis(2)))
+                .signWith(keyPair.getPrivate(), algorithm.getJwaAlgorithm())
+                .compact();
+    }
+
+    @Benchmark
+    public Claims verify() {
+        return parser.parseSignedClaims(token).getPayload();
+    }
+}
@@ -0,0 +1,106 @@
+package com.brett.mypassport.benchmark;
+
+import com.brett.mypassport.dto.PermissionCheckRequest;
+import com.brett.mypassport.dto.PermissionCheckResponse;
+import com.brett.mypassport.service.AuthorityChangedEvent;
+import com.brett.mypassport.service.PermissionDecisionCacheService;
+import com.brett.mypassport.service.UserDetailsCacheService;
+import com.brett.mypassport.service.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link UserService#checkPermission} and {@link UserService#loadUserByUsername} against the in-memory database
+ * prepared by {@link BenchmarkContext}; exact-permission checks and user lookups are measured both from their caches
+ * and without them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class UserServiceBenchmark {
+
+    private static final List<String> ADMIN = List.of(BenchmarkContext.ADMIN_EMAIL);
+
+    private UserService userService;
+    private UserDetailsCacheService userDetailsCache;
+    private PermissionDecisionCacheService decisionCache;
+    private TransactionTemplate readOnly;
+
+    private PermissionCheckRequest exactPermission;
+    private PermissionCheckRequest wildcardPath;
+    private PermissionCheckRequest deniedPath;
+
+    @Setup
+    public void setUp() {
+        userService = BenchmarkContext.get().getBean(UserService.class);
+        userDetailsCache = BenchmarkContext.get().getBean(UserDetailsCacheService.class);
+        decisionCache = BenchmarkContext.get().getBean(PermissionDecisionCacheService.class);
+        readOnly = BenchmarkContext.readOnlyTransaction();
+        String token = BenchmarkContext.adminToken();
+
+        exactPermission = request(token, "sev:feature7:view", null, null);
+        // Granted by the seeded "/api/v1/sev/**" entry
+        wildcardPath = request(token, null, "/api/v1/sev/incidents/42/timeline", "GET");
+        // Scans every pattern before failing
+        deniedPath = request(token, null, "/api/v1/other/incidents/42", "DELETE");
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkContext.close();
+    }
+
+    @Benchmark
+    public PermissionCheckResponse checkExactPermission() {
+        return readOnly.execute(status -> userService.checkPermission(exactPermission));
+    }
+
+    @Benchmark
+    public PermissionCheckResponse checkExactPermissionUncached() {
+        // Drops the cached decision only; the token is validated and the compiled matcher evaluated again
+        decisionCache.invalidateAll();
+        return readOnly.execute(status -> userService.checkPermission(exactPermission));
+    }
+
+    @Benchmark
+    public PermissionCheckResponse checkWildcardPath() {
+        return readOnly.execute(status -> userService.checkPermission(wildcardPath));
+    }
+
+    @Benchmark
+    public PermissionCheckResponse checkDeniedPath() {
+        return readOnly.execute(status -> userService.checkPermission(deniedPath));
+    }
+
+    @Benchmark
+    public UserDetails loadUserByUsername() {
+        return userService.loadUserByUsername(BenchmarkContext.ADMIN_EMAIL);
+    }
+
+    @Benchmark
+    public UserDetails loadUserByUsernameUncached() {
+        userDetailsCache.onAuthorityChanged(new AuthorityChangedEvent(ADMIN, false));
+        return userService.loadUserByUsername(BenchmarkContext.ADMIN_EMAIL);
+    }
+
+    private static PermissionCheckRequest request(String token, String requiredPermission, String path, String method) {
+        PermissionCheckRequest request = new PermissionCheckRequest();
+        request.setToken(token);
+        request.setSysCode(BenchmarkContext.SEVWATCH);
+        request.setRequiredPermission(requiredPermission);
+        request.setPath(path);
+        request.setMethod(method);
+        return request;
+    }
+}
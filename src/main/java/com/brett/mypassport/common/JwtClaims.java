@@ -0,0 +1,107 @@
+package com.brett.mypassport.common;
+
+import io.jsonwebtoken.Claims;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The verified claims of a single JWT. Instances are produced by {@link JwtUtil#parseToken(String)}
+ * after the signature has been checked, so callers can read everything they need from one parse.
+ */
+public final class JwtClaims {
+
+    private final String tokenHash;
+    private final Claims claims;
+    private volatile List<GrantedAuthority> authorities;
+
+    JwtClaims(String tokenHash, Claims claims) {
+        this.tokenHash = tokenHash;
+        this.claims = claims;
+    }
+
+    /**
+     * Hex encoded SHA-256 digest of the raw token.
+     */
+    public String getTokenHash() {
+        return tokenHash;
+    }
+
+    /**
+     * The "jti" claim, unique per token.
+     */
+    public String getId() {
+        return claims.getId();
+    }
+
+    /**
+     * The session ID shared by the access and refresh token issued together; null for tokens issued before
+     * sessions were introduced.
+     */
+    public String getSessionId() {
+        return claims.get(JwtUtil.SESSION_ID_CLAIM, String.class);
+    }
+
+    /**
+     * The {@value JwtUtil#AUTHORITY_VERSION_CLAIM} claim; null unless the token embeds the user's authorities.
+     */
+    public Integer getAuthorityVersion() {
+        return claims.get(JwtUtil.AUTHORITY_VERSION_CLAIM, Integer.class);
+    }
+
+    /**
+     * The granted authorities embedded in the {@value JwtUtil#AUTHORITIES_CLAIM} claim, in the same form
+     * {@code UserService#loadUserByUsername} builds them: "ROLE_" + role name and the raw permission names.
+     * @return The authorities, or null if the token does not embed them
+     */
+    public List<GrantedAuthority> getAuthorities() {
+        List<GrantedAuthority> result = authorities;
+        if (result == null && claims.get(JwtUtil.AUTHORITIES_CLAIM) instanceof Map<?, ?> systems) {
+            // Computed once per token; the instance is shared through the claims cache
+            Set<String> names = new LinkedHashSet<>();
+            for (Object grants : systems.values()) {
+                if (grants instanceof Map<?, ?> grantMap) {
+                    addNames(names, grantMap.get(JwtUtil.ROLES_KEY), "ROLE_");
+                    addNames(names, grantMap.get(JwtUtil.PERMISSIONS_KEY), "");
+                }
+            }
+            result = names.stream().<GrantedAuthority>map(SimpleGrantedAuthority::new).toList();
+            authorities = result;
+        }
+        return result;
+    }
+
+    private static void addNames(Set<String> names, Object values, String prefix) {
+        if (values instanceof Collection<?> collection) {
+            for (Object value : collection) {
+                names.add(prefix + value);
+            }
+        }
+    }
+
+    public String getSubject() {
+        return claims.getSubject();
+    }
+
+    public Date getIssuedAt() {
+        return claims.getIssuedAt();
+    }
+
+    public Date getExpiration() {
+        return claims.getExpiration();
+    }
+
+    public boolean isExpired() {
+        return claims.getExpiration().before(new Date());
+    }
+
+    public <T> T get(String name, Class<T> requiredType) {
+        return claims.get(name, requiredType);
+    }
+}
@@ -1,41 +1,161 @@
 package com.brett.mypassport.common;
 
-import com.brett.mypassport.config.RsaKeyProperties;
+import com.brett.mypassport.config.JwtKeyRing;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.ProtectedHeader;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.security.PublicKey;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 @Component
 public class JwtUtil {
 
     @Autowired
-    private RsaKeyProperties rsaKeyProperties;
+    private JwtKeyRing jwtKeyRing;
+
+    @Value("${app.jwt.claims-cache.max-size:10000}")
+    private long claimsCacheMaxSize;
 
     private static final long EXPIRATION_TIME = 1000 * 60 * 60 * 2; // 2 hours
     private static final long REFRESH_EXPIRATION_TIME = 1000 * 60 * 60 * 24; // 1 day
 
+    /**
+     * Claim holding the session ID shared by the access and refresh token issued together.
+     */
+    public static final String SESSION_ID_CLAIM = "sid";
+
+    /**
+     * Claim holding the user's grants per system: {@code {"<sysCode>": {"r": [role names], "p": [permission names]}}}.
+     */
+    public static final String AUTHORITIES_CLAIM = "auth";
+    public static final String ROLES_KEY = "r";
+    public static final String PERMISSIONS_KEY = "p";
+
+    /**
+     * Claim holding the user's authority version at the time {@value #AUTHORITIES_CLAIM} was captured.
+     */
+    public static final String AUTHORITY_VERSION_CLAIM = "av";
+
+    @Value("${app.jwt.authority-claims.enabled:false}")
+    private boolean authorityClaimsEnabled;
+
+    // JwtParser is immutable and thread-safe, so one instance serves every request
+    private JwtParser jwtParser;
+
+    // Recently verified tokens keyed by their SHA-256 digest; each entry lives until the token's exp
+    private Cache<String, JwtClaims> verifiedTokens;
+
+    @PostConstruct
+    public void init() {
+        this.jwtParser = Jwts.parser()
+                .keyLocator(header -> {
+                    // Older keys stay resolvable by kid until the key ring retires them; the key's own
+                    // type pins the algorithm, so an ES256 key can never verify an RS256 header and vice versa
+                    String kid = header instanceof ProtectedHeader protectedHeader ? protectedHeader.getKeyId() : null;
+                    PublicKey key = jwtKeyRing.getVerificationKey(kid);
+                    if (key == null) {
+                        throw new JwtException("Unknown signing key: " + kid);
+                    }
+                    return key;
+                })
+                .build();
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(claimsCacheMaxSize)
+                .expireAfter(new Expiry<String, JwtClaims>() {
+                    @Override
+                    public long expireAfterCreate(String key, JwtClaims value, long currentTime) {
+                        long remainingMillis = value.getExpiration().getTime() - System.currentTimeMillis();
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remainingMillis));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, JwtClaims value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, JwtClaims value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
     public String generateToken(String username) {
-        return createToken(new HashMap<>(), username, EXPIRATION_TIME);
+        return generateToken(username, newSessionId());
+    }
+
+    public String generateToken(String username, String sessionId) {
+        return createToken(sessionClaims(sessionId), username, EXPIRATION_TIME);
+    }
+
+    /**
+     * Generate an access token that also carries the user's grants, so requests can be authenticated
+     * from the token alone while the user's authority version still matches.
+     * @param authorities      sysCode -> {@value #ROLES_KEY}/{@value #PERMISSIONS_KEY} -> names
+     * @param authorityVersion The user's authority version read before the grants were loaded
+     */
+    public String generateToken(String username, String sessionId, Map<String, Map<String, List<String>>> authorities, int authorityVersion) {
+        Map<String, Object> claims = sessionClaims(sessionId);
+        claims.put(AUTHORITIES_CLAIM, authorities);
+        claims.put(AUTHORITY_VERSION_CLAIM, authorityVersion);
+        return createToken(claims, username, EXPIRATION_TIME);
+    }
+
+    /**
+     * @return Whether access tokens should embed the user's authorities ({@code app.jwt.authority-claims.enabled})
+     */
+    public boolean isAuthorityClaimsEnabled() {
+        return authorityClaimsEnabled;
     }
 
     public String generateRefreshToken(String username) {
-        return createToken(new HashMap<>(), username, REFRESH_EXPIRATION_TIME);
+        return generateRefreshToken(username, newSessionId());
+    }
+
+    public String generateRefreshToken(String username, String sessionId) {
+        return createToken(sessionClaims(sessionId), username, REFRESH_EXPIRATION_TIME);
+    }
+
+    /**
+     * @return A new random session ID for the {@value #SESSION_ID_CLAIM} claim
+     */
+    public String newSessionId() {
+        return UUID.randomUUID().toString();
+    }
+
+    private Map<String, Object> sessionClaims(String sessionId) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(SESSION_ID_CLAIM, sessionId);
+        return claims;
     }
 
     private String createToken(Map<String, Object> claims, String subject, long expirationTime) {
+        JwtKeyRing.SigningKey signingKey = jwtKeyRing.getActiveKey();
         return Jwts.builder()
-                .setClaims(claims)
-                .setSubject(subject)
-                .setIssuedAt(new Date(System.currentTimeMillis()))
-                .setExpiration(new Date(System.currentTimeMillis() + expirationTime))
-                .signWith(rsaKeyProperties.getPrivateKey(), SignatureAlgorithm.RS256)
+                .header().keyId(signingKey.getKid()).and()
+                .claims(claims)
+                .id(UUID.randomUUID().toString())
+                .subject(subject)
+                .issuedAt(new Date(System.currentTimeMillis()))
+                .expiration(new Date(System.currentTimeMillis() + expirationTime))
+                .signWith(signingKey.getPrivateKey(), signingKey.getAlgorithm().getJwaAlgorithm())
                 .compact();
     }
 
@@ -47,21 +167,49 @@ public class JwtUtil {
         return REFRESH_EXPIRATION_TIME;
     }
 
+    /**
+     * @return The longest lifetime of any token this class issues, in milliseconds
+     */
+    public long getMaxTokenLifetime() {
+        return Math.max(EXPIRATION_TIME, REFRESH_EXPIRATION_TIME);
+    }
+
+    /**
+     * Verify the token signature and expiration and return its claims.
+     * The signature is checked once per distinct token; later calls are served from the cache
+     * until the token expires.
+     * @param token The raw JWT
+     * @return The verified claims
+     * @throws io.jsonwebtoken.JwtException if the token is malformed, tampered with or expired
+     */
+    public JwtClaims parseToken(String token) {
+        String tokenHash = TokenHashUtil.sha256Hex(token);
+        JwtClaims cached = verifiedTokens.getIfPresent(tokenHash);
+        if (cached != null && !cached.isExpired()) {
+            return cached;
+        }
+
+        // Throws if the signature is invalid or the token has already expired
+        JwtClaims verified = new JwtClaims(tokenHash, extractAllClaims(token));
+        verifiedTokens.put(tokenHash, verified);
+        return verified;
+    }
+
     public Boolean validateToken(String token, String username) {
-        final String extractedUsername = extractUsername(token);
-        return (extractedUsername.equals(username) && !isTokenExpired(token));
+        final JwtClaims claims = parseToken(token);
+        return (claims.getSubject().equals(username) && !claims.isExpired());
     }
 
     public Boolean validateToken(String token) {
-        return !isTokenExpired(token);
+        return !parseToken(token).isExpired();
     }
 
     public String extractUsername(String token) {
-        return extractClaim(token, Claims::getSubject);
+        return parseToken(token).getSubject();
     }
 
     public Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
+        return parseToken(token).getExpiration();
     }
 
     public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
@@ -70,14 +218,8 @@ public class JwtUtil {
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(rsaKeyProperties.getPublicKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
-    }
-
-    private Boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+        return jwtParser
+                .parseSignedClaims(token)
+                .getPayload();
     }
 }
@@ -0,0 +1,62 @@
+package com.brett.mypassport.common;
+
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * Opaque cursor for keyset pagination over (created_at, id), the order every scroll endpoint returns rows in.
+ * <p>
+ * Unlike offset paging, the next slice starts with an indexed range scan after the last row returned,
+ * so deep slices cost the same as the first one and no count query is needed.
+ */
+public final class KeysetCursor {
+
+    /**
+     * Sort matching the cursor keys; the id breaks ties between rows created at the same instant.
+     */
+    public static final Sort ORDER = Sort.by("createdAt", "id");
+
+    private static final char SEPARATOR = '|';
+
+    private KeysetCursor() {
+        // Prevent instantiation
+    }
+
+    /**
+     * @return The cursor pointing after the given row
+     */
+    public static String encode(LocalDateTime createdAt, Long id) {
+        String keys = createdAt + String.valueOf(SEPARATOR) + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(keys.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor A cursor returned by a previous slice, or null/empty for the first slice
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static KeysetScrollPosition decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return ScrollPosition.keyset();
+        }
+        try {
+            String keys = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = keys.indexOf(SEPARATOR);
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            LocalDateTime createdAt = LocalDateTime.parse(keys.substring(0, separator));
+            Long id = Long.valueOf(keys.substring(separator + 1));
+            return ScrollPosition.forward(Map.of("createdAt", createdAt, "id", id));
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            // NumberFormatException is an IllegalArgumentException
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
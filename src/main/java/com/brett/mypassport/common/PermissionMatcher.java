@@ -0,0 +1,213 @@
+package com.brett.mypassport.common;
+
+import org.springframework.util.AntPathMatcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A user's permission set for one system, compiled once so that checks do not scan every permission.
+ * <p>
+ * Results are identical to matching each permission with {@link AntPathMatcher} against "METHOD:path" and
+ * against the bare path, plus the prefix rule for permissions ending in "/*" or "/**". To that end:
+ * <ul>
+ *   <li>exact permission strings are looked up in a hash set;</li>
+ *   <li>permissions made of literal segments, optionally ending in a "**" segment, form a segment trie.
+ *       Paths are split into segments the way {@link AntPathMatcher} splits them, so a method-qualified
+ *       permission such as "GET:/api/v1/orders/**" sits under its "GET:" segment;</li>
+ *   <li>the "/*" and "/**" prefixes form a character trie;</li>
+ *   <li>anything else ("?", "{var}", "*" inside a segment...) is still matched with {@link AntPathMatcher}.</li>
+ * </ul>
+ * Checks against the tries cost time proportional to the path length, not the number of permissions.
+ * Instances are immutable and thread-safe.
+ */
+public final class PermissionMatcher {
+
+    private static final AntPathMatcher PATH_MATCHER = new AntPathMatcher();
+    private static final String SEPARATOR = "/";
+
+    private final Set<String> permissions;
+    // Separate roots for patterns with and without a leading separator, which never match each other
+    private final SegmentNode absoluteRoot = new SegmentNode();
+    private final SegmentNode relativeRoot = new SegmentNode();
+    private final CharNode prefixRoot = new CharNode();
+    private final List<String> fallbackPatterns = new ArrayList<>();
+
+    private PermissionMatcher(Collection<String> permissions) {
+        this.permissions = Set.copyOf(permissions);
+        for (String permission : this.permissions) {
+            if (permission.endsWith("/*") || permission.endsWith("/**")) {
+                // Same as the former replaceAll("/\\*+$", "/"): keep everything up to and including the last separator
+                addPrefix(permission.substring(0, permission.lastIndexOf('/') + 1));
+            }
+            if (!addPattern(permission)) {
+                fallbackPatterns.add(permission);
+            }
+        }
+    }
+
+    public static PermissionMatcher compile(Collection<String> permissions) {
+        return new PermissionMatcher(permissions);
+    }
+
+    public Set<String> getPermissions() {
+        return permissions;
+    }
+
+    /**
+     * @return Whether the exact permission string is granted
+     */
+    public boolean hasPermission(String permission) {
+        return permissions.contains(permission);
+    }
+
+    /**
+     * @param path   The request path, e.g. "/api/v1/orders/42"
+     * @param method The HTTP method, or null/empty to match the path regardless of method
+     * @return Whether any permission grants the path
+     */
+    public boolean matchesPath(String path, String method) {
+        String methodAndPath = method != null && !method.isEmpty() ? method.toUpperCase() + ":" + path : null;
+        if (methodAndPath != null) {
+            if (matchesPattern(methodAndPath) || matchesPrefix(methodAndPath.substring(methodAndPath.indexOf(':') + 1))) {
+                return true;
+            }
+        }
+        return matchesPattern(path) || matchesPrefix(path);
+    }
+
+    private boolean matchesPattern(String value) {
+        if (matchesTrie(value)) {
+            return true;
+        }
+        for (String pattern : fallbackPatterns) {
+            if (PATH_MATCHER.match(pattern, value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesTrie(String value) {
+        SegmentNode node = value.startsWith(SEPARATOR) ? absoluteRoot : relativeRoot;
+        int pos = 0;
+        int length = value.length();
+        while (true) {
+            if (node.anyRemainder) {
+                return true;
+            }
+            // Skip empty segments, as AntPathMatcher does
+            while (pos < length && value.charAt(pos) == '/') {
+                pos++;
+            }
+            if (pos == length) {
+                return value.endsWith(SEPARATOR) ? node.endsWithSeparator : node.endsWithoutSeparator;
+            }
+            int end = value.indexOf('/', pos);
+            if (end < 0) {
+                end = length;
+            }
+            node = node.children.get(value.substring(pos, end));
+            if (node == null) {
+                return false;
+            }
+            pos = end;
+        }
+    }
+
+    private boolean matchesPrefix(String value) {
+        CharNode node = prefixRoot;
+        for (int i = 0; ; i++) {
+            if (node.terminal) {
+                return true;
+            }
+            if (i == value.length()) {
+                return false;
+            }
+            node = node.children.get(value.charAt(i));
+            if (node == null) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Add a pattern made of literal segments, optionally ending in "**", to the segment trie.
+     * @return false if the pattern uses any other wildcard and must be matched with AntPathMatcher
+     */
+    private boolean addPattern(String pattern) {
+        String[] segments = pattern.split(SEPARATOR);
+        SegmentNode node = pattern.startsWith(SEPARATOR) ? absoluteRoot : relativeRoot;
+        List<String> literals = new ArrayList<>();
+        boolean anyRemainder = false;
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if ("**".equals(segment) && isLastSegment(segments, i)) {
+                anyRemainder = true;
+            } else if (hasWildcard(segment)) {
+                return false;
+            } else {
+                literals.add(segment);
+            }
+        }
+        for (String literal : literals) {
+            node = node.children.computeIfAbsent(literal, k -> new SegmentNode());
+        }
+        if (anyRemainder) {
+            // A trailing "**" also matches the bare prefix, with or without a trailing separator
+            node.anyRemainder = true;
+        } else if (pattern.endsWith(SEPARATOR)) {
+            node.endsWithSeparator = true;
+        } else {
+            node.endsWithoutSeparator = true;
+        }
+        return true;
+    }
+
+    private static boolean isLastSegment(String[] segments, int index) {
+        for (int i = index + 1; i < segments.length; i++) {
+            if (!segments[i].isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasWildcard(String segment) {
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c == '*' || c == '?' || c == '{' || c == '}') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addPrefix(String prefix) {
+        CharNode node = prefixRoot;
+        for (int i = 0; i < prefix.length(); i++) {
+            node = node.children.computeIfAbsent(prefix.charAt(i), k -> new CharNode());
+        }
+        node.terminal = true;
+    }
+
+    private static final class SegmentNode {
+        private final Map<String, SegmentNode> children = new HashMap<>();
+        private boolean anyRemainder;
+        private boolean endsWithSeparator;
+        private boolean endsWithoutSeparator;
+    }
+
+    private static final class CharNode {
+        private final Map<Character, CharNode> children = new HashMap<>();
+        private boolean terminal;
+    }
+}
@@ -0,0 +1,17 @@
+package com.brett.mypassport.common;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a controller method whose body must be written as-is instead of being wrapped in {@link ApiResponse},
+ * e.g. standard documents such as a JWK Set that third-party clients parse directly.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RawResponse {
+}
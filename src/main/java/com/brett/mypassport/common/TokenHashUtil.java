@@ -0,0 +1,29 @@
+package com.brett.mypassport.common;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 digests of token strings, used wherever a token (or another value that should not be stored as is, such as
+ * an email address in a Redis key) has to act as a lookup key.
+ */
+public final class TokenHashUtil {
+
+    private TokenHashUtil() {
+        // Prevent instantiation
+    }
+
+    public static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public static String sha256Hex(String value) {
+        return HexFormat.of().formatHex(sha256(value));
+    }
+}
@@ -6,6 +6,7 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.security.access.AccessDeniedException;
+import jakarta.servlet.http.HttpServletResponse;
 
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.validation.FieldError;
@@ -41,6 +42,13 @@ public class GlobalExceptionHandler {
         return ApiResponse.error(403, e.getMessage());
     }
 
+    @ExceptionHandler(BoundedPasswordEncoder.SaturatedException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ApiResponse<Void> handleSaturatedException(BoundedPasswordEncoder.SaturatedException e, HttpServletResponse response) {
+        response.setHeader("Retry-After", "1");
+        return ApiResponse.error(503, e.getMessage());
+    }
+
     @ExceptionHandler(Exception.class)
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public ApiResponse<Void> handleException(Exception e) {
@@ -1,6 +1,7 @@
 package com.brett.mypassport.config;
 
 import com.brett.mypassport.common.ApiResponse;
+import com.brett.mypassport.common.RawResponse;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,8 +21,8 @@ public class GlobalResponseAdvice implements ResponseBodyAdvice<Object> {
 
     @Override
     public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
-        // Apply to all responses from our controllers
-        return true;
+        // Apply to all responses from our controllers, except standard documents marked @RawResponse
+        return !returnType.hasMethodAnnotation(RawResponse.class);
     }
 
     @Override
@@ -1,15 +1,21 @@
 package com.brett.mypassport.config;
 
+import com.brett.mypassport.common.JwtClaims;
 import com.brett.mypassport.common.JwtUtil;
+import com.brett.mypassport.service.AuthorityVersionService;
+import com.brett.mypassport.service.TokenEpochService;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
@@ -17,6 +23,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.List;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
@@ -28,6 +35,17 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     @Lazy
     private UserDetailsService userDetailsService;
 
+    @Autowired
+    @Lazy
+    private AuthorityVersionService authorityVersionService;
+
+    @Autowired
+    @Lazy
+    private TokenEpochService tokenEpochService;
+
+    @Value("${app.jwt.authority-claims.enabled:false}")
+    private boolean authorityClaimsEnabled;
+
     @Override
     protected void doFilterInternal(
             @NonNull HttpServletRequest request,
@@ -46,10 +64,14 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         jwt = authHeader.substring(7);
         try {
-            username = jwtUtil.extractUsername(jwt);
-            if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                UserDetails userDetails = this.userDetailsService.loadUserByUsername(username);
-                if (jwtUtil.validateToken(jwt, userDetails.getUsername())) {
+            // Signature and expiry are verified once here; the claims are reused below
+            JwtClaims claims = jwtUtil.parseToken(jwt);
+            username = claims.getSubject();
+            // Tokens issued before the user revoked all of their sessions are not authenticated
+            if (username != null && SecurityContextHolder.getContext().getAuthentication() == null
+                    && !tokenEpochService.isRevoked(username, claims.getIssuedAt().getTime() / 1000)) {
+                UserDetails userDetails = loadUserDetails(claims);
+                if (userDetails != null && username.equals(userDetails.getUsername()) && !claims.isExpired()) {
                     UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
                             userDetails,
                             null,
@@ -65,4 +87,21 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         
         filterChain.doFilter(request, response);
     }
+
+    /**
+     * Build the principal from the token's embedded authorities when it carries them and the user's grants have not
+     * changed since it was issued; tokens without them go through the user details service.
+     * @return The user details, or null if the embedded authorities are stale and the client must refresh the token
+     */
+    private UserDetails loadUserDetails(JwtClaims claims) {
+        Integer tokenVersion = claims.getAuthorityVersion();
+        List<GrantedAuthority> authorities = claims.getAuthorities();
+        if (!authorityClaimsEnabled || tokenVersion == null || authorities == null) {
+            return userDetailsService.loadUserByUsername(claims.getSubject());
+        }
+        if (!tokenVersion.equals(authorityVersionService.getCurrentVersion(claims.getSubject()))) {
+            return null;
+        }
+        return new User(claims.getSubject(), "", authorities);
+    }
 }
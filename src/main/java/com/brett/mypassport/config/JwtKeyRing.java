@@ -0,0 +1,509 @@
+package com.brett.mypassport.config;
+
+import com.brett.mypassport.common.TokenHashUtil;
+import com.brett.mypassport.service.LeaseService;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.Certificate;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Holds the keys used to sign and verify JWTs.
+ * <p>
+ * Keys are loaded from a directory of PKCS#8 PEM files ({@code <kid>.key}, with the X.509 public key in
+ * {@code <kid>.pub}) or from a PKCS#12/JKS keystore (alias = kid), so every node behind the load balancer signs
+ * with the same key and tokens survive restarts. The newest key of the configured {@link JwtSigningAlgorithm}
+ * is used for signing once it has been published for {@code activation-delay}; older keys, including keys of
+ * a previously configured algorithm, are kept for verification until {@code retention} has passed since they
+ * were superseded.
+ * When neither a directory nor a keystore is configured an ephemeral key is generated (development only).
+ * <p>
+ * A key's creation time orders the ring, so it must not depend on file timestamps, which copies, checkouts and image
+ * builds reset. It is read from the kid, which generated keys start with ({@code yyyyMMddHHmmss-xxxx}, UTC). Keys
+ * with other kids take it from a {@code <kid>.created} file (an ISO-8601 instant), which is written with the key
+ * file's modification time the first time the key is seen; keystore entries fall back to their creation date.
+ */
+@Component
+public class JwtKeyRing {
+
+    private static final Logger log = LoggerFactory.getLogger(JwtKeyRing.class);
+
+    private static final String KEY_FILE_SUFFIX = ".key";
+    private static final String PUBLIC_KEY_FILE_SUFFIX = ".pub";
+    private static final String CREATED_FILE_SUFFIX = ".created";
+    private static final String ROTATION_LEASE_NAME = "jwt-key-rotation";
+    // Far longer than a rotation takes; the lease is released as soon as it is done
+    private static final Duration ROTATION_LEASE = Duration.ofMinutes(5);
+    private static final DateTimeFormatter KID_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneOffset.UTC);
+
+    @Autowired
+    private LeaseService leaseService;
+
+    @Value("${app.jwt.algorithm:RS256}")
+    private JwtSigningAlgorithm algorithm;
+
+    @Value("${app.jwt.keys.dir:}")
+    private String keyDir;
+
+    @Value("${app.jwt.keys.keystore.path:}")
+    private String keystorePath;
+
+    @Value("${app.jwt.keys.keystore.type:PKCS12}")
+    private String keystoreType;
+
+    @Value("${app.jwt.keys.keystore.password:}")
+    private String keystorePassword;
+
+    @Value("${app.jwt.keys.rotation.enabled:false}")
+    private boolean rotationEnabled;
+
+    @Value("${app.jwt.keys.rotation.interval:P30D}")
+    private Duration rotationInterval;
+
+    @Value("${app.jwt.keys.activation-delay:PT10M}")
+    private Duration activationDelay;
+
+    @Value("${app.jwt.keys.retention:P2D}")
+    private Duration retention;
+
+    private volatile Snapshot snapshot;
+
+    @PostConstruct
+    public void init() {
+        if (isBlank(keyDir) && isBlank(keystorePath)) {
+            log.warn("No JWT key directory or keystore configured; generating an ephemeral key. Tokens will not survive a restart.");
+            SigningKey key = generateKey(algorithm, Instant.now());
+            this.snapshot = Snapshot.of(List.of(key), key);
+            return;
+        }
+        reload();
+        if (snapshot.active == null) {
+            if (isBlank(keyDir)) {
+                throw new IllegalStateException("Keystore " + keystorePath + " does not contain any " + algorithm + " key entries");
+            }
+            log.info("JWT key directory {} has no {} key; generating the first one", keyDir, algorithm);
+            writeKey(generateKey(algorithm, Instant.now()));
+            reload();
+        }
+    }
+
+    /**
+     * Re-read the configured key source. Picks up keys rotated by other nodes sharing the same directory.
+     */
+    @Scheduled(fixedDelayString = "${app.jwt.keys.reload-interval:PT5M}", initialDelayString = "${app.jwt.keys.reload-interval:PT5M}")
+    public synchronized void reload() {
+        if (isBlank(keyDir) && isBlank(keystorePath)) {
+            return;
+        }
+        List<SigningKey> loaded = isBlank(keystorePath) ? loadFromDirectory() : loadFromKeystore();
+        Instant now = Instant.now();
+        loaded.sort(Comparator.comparing(SigningKey::getCreatedAt).reversed());
+
+        // Newest key of the configured algorithm that has been published long enough for downstream JWKS caches
+        // to have seen it, falling back to the oldest one when none has matured yet
+        SigningKey active = null;
+        SigningKey oldest = null;
+        for (SigningKey key : loaded) {
+            if (key.getAlgorithm() != algorithm) {
+                continue;
+            }
+            if (active == null && !key.getCreatedAt().plus(activationDelay).isAfter(now)) {
+                active = key;
+            }
+            oldest = key;
+        }
+        if (active == null) {
+            active = oldest;
+        }
+
+        // Keep keys that are active, not yet active, or superseded less than `retention` ago
+        List<SigningKey> retained = new ArrayList<>();
+        Instant supersededAt = null;
+        for (SigningKey key : loaded) {
+            boolean olderThanActive = active != null && key.getCreatedAt().isBefore(active.getCreatedAt());
+            if (!olderThanActive || supersededAt == null || supersededAt.plus(retention).isAfter(now)) {
+                retained.add(key);
+            }
+            if (key == active || olderThanActive) {
+                supersededAt = key.getCreatedAt();
+            }
+        }
+        this.snapshot = Snapshot.of(retained, active);
+    }
+
+    /**
+     * Generate a new signing key when the active one is older than the rotation interval.
+     * Old public keys stay in the ring for verification. Nodes sharing the key directory take turns through a
+     * {@link LeaseService} lease and re-read the directory once they hold it, so only one of them adds the key.
+     */
+    @Scheduled(fixedDelayString = "${app.jwt.keys.rotation.check-interval:PT1H}", initialDelayString = "${app.jwt.keys.rotation.check-interval:PT1H}")
+    public synchronized void rotateIfDue() {
+        if (!rotationEnabled || isBlank(keyDir)) {
+            return;
+        }
+        if (!leaseService.tryAcquire(ROTATION_LEASE_NAME, ROTATION_LEASE)) {
+            return;
+        }
+        try {
+            reload();
+            SigningKey newest = null;
+            for (SigningKey key : snapshot.keys) {
+                if (key.getAlgorithm() == algorithm) {
+                    newest = key;
+                    break;
+                }
+            }
+            if (newest != null && newest.getCreatedAt().plus(rotationInterval).isAfter(Instant.now())) {
+                return;
+            }
+            SigningKey key = generateKey(algorithm, Instant.now());
+            writeKey(key);
+            log.info("Rotated JWT signing key; new kid {} becomes active after {}", key.getKid(), activationDelay);
+            reload();
+            deleteRetiredKeyFiles(snapshot);
+        } finally {
+            leaseService.release(ROTATION_LEASE_NAME);
+        }
+    }
+
+    public SigningKey getActiveKey() {
+        return snapshot.active;
+    }
+
+    /**
+     * Resolve the public key for a token header. Tokens without a kid are checked against the active key.
+     * @return The key, or null if the kid is unknown or has been retired
+     */
+    public PublicKey getVerificationKey(String kid) {
+        Snapshot current = snapshot;
+        SigningKey key = kid == null ? current.active : current.byKid.get(kid);
+        return key == null ? null : key.getPublicKey();
+    }
+
+    /**
+     * @return The public keys as an RFC 7517 JWK Set
+     */
+    public Map<String, Object> getJwkSet() {
+        return snapshot.jwkSet;
+    }
+
+    /**
+     * @return A strong ETag that changes whenever the set of published keys changes
+     */
+    public String getJwkSetETag() {
+        return snapshot.etag;
+    }
+
+    private List<SigningKey> loadFromDirectory() {
+        Path dir = Paths.get(keyDir);
+        List<SigningKey> keys = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            try {
+                Files.createDirectories(dir);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot create JWT key directory " + dir, e);
+            }
+            return keys;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + KEY_FILE_SUFFIX)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                String kid = fileName.substring(0, fileName.length() - KEY_FILE_SUFFIX.length());
+                try {
+                    PrivateKey privateKey = readPkcs8(file);
+                    Path publicKeyFile = dir.resolve(kid + PUBLIC_KEY_FILE_SUFFIX);
+                    PublicKey publicKey = Files.exists(publicKeyFile)
+                            ? readX509(publicKeyFile, privateKey.getAlgorithm())
+                            : derivePublicKey(privateKey);
+                    Instant createdAt = directoryKeyCreatedAt(dir, kid, file);
+                    keys.add(new SigningKey(kid, publicKey, privateKey, createdAt));
+                } catch (IOException | GeneralSecurityException e) {
+                    log.error("Skipping unreadable JWT key file {}: {}", file, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read JWT key directory " + dir, e);
+        }
+        return keys;
+    }
+
+    private List<SigningKey> loadFromKeystore() {
+        char[] password = keystorePassword.toCharArray();
+        List<SigningKey> keys = new ArrayList<>();
+        try (InputStream in = Files.newInputStream(Paths.get(keystorePath))) {
+            KeyStore keyStore = KeyStore.getInstance(keystoreType);
+            keyStore.load(in, password);
+            Enumeration<String> aliases = keyStore.aliases();
+            while (aliases.hasMoreElements()) {
+                String alias = aliases.nextElement();
+                if (!keyStore.isKeyEntry(alias)) {
+                    continue;
+                }
+                Key key = keyStore.getKey(alias, password);
+                Certificate certificate = keyStore.getCertificate(alias);
+                if (!(key instanceof PrivateKey privateKey)) {
+                    continue;
+                }
+                PublicKey publicKey = certificate != null ? certificate.getPublicKey() : derivePublicKey(privateKey);
+                try {
+                    JwtSigningAlgorithm.forKey(publicKey);
+                } catch (IllegalArgumentException e) {
+                    log.warn("Skipping keystore entry {}: {}", alias, e.getMessage());
+                    continue;
+                }
+                Instant createdAt = parseKidTimestamp(alias);
+                if (createdAt == null) {
+                    createdAt = keyStore.getCreationDate(alias) != null
+                            ? keyStore.getCreationDate(alias).toInstant()
+                            : Instant.EPOCH;
+                }
+                keys.add(new SigningKey(alias, publicKey, privateKey, createdAt));
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot load JWT keystore " + keystorePath, e);
+        }
+        return keys;
+    }
+
+    /**
+     * @return The time encoded in the kid, or else the one recorded in its {@code .created} file, which is written
+     * from the key file's modification time if missing
+     */
+    private static Instant directoryKeyCreatedAt(Path dir, String kid, Path keyFile) throws IOException {
+        Instant createdAt = parseKidTimestamp(kid);
+        if (createdAt != null) {
+            return createdAt;
+        }
+        Path createdFile = dir.resolve(kid + CREATED_FILE_SUFFIX);
+        if (Files.exists(createdFile)) {
+            try {
+                return Instant.parse(Files.readString(createdFile, StandardCharsets.US_ASCII).trim());
+            } catch (DateTimeParseException e) {
+                throw new IOException("Invalid creation time in " + createdFile, e);
+            }
+        }
+        createdAt = Files.getLastModifiedTime(keyFile).toInstant();
+        try {
+            writeAtomically(dir, kid + CREATED_FILE_SUFFIX, createdAt + "\n");
+        } catch (IOException e) {
+            log.warn("Cannot record the creation time of JWT key {}; using its file time until it is: {}", kid, e.getMessage());
+        }
+        return createdAt;
+    }
+
+    /**
+     * @return The creation time a generated kid starts with, or null if the kid does not follow that format
+     */
+    static Instant parseKidTimestamp(String kid) {
+        int length = "yyyyMMddHHmmss".length();
+        if (kid.length() < length || (kid.length() > length && kid.charAt(length) != '-')) {
+            return null;
+        }
+        try {
+            return KID_FORMAT.parse(kid.substring(0, length), Instant::from);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private void writeKey(SigningKey key) {
+        Path dir = Paths.get(keyDir);
+        try {
+            Files.createDirectories(dir);
+            // The public key goes first: other nodes only pick a key up once its .key file exists
+            writeAtomically(dir, key.getKid() + PUBLIC_KEY_FILE_SUFFIX, toPem("PUBLIC KEY", key.getPublicKey().getEncoded()));
+            writeAtomically(dir, key.getKid() + KEY_FILE_SUFFIX, toPem("PRIVATE KEY", key.getPrivateKey().getEncoded()));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot write JWT key to " + dir, e);
+        }
+    }
+
+    private static void writeAtomically(Path dir, String fileName, String content) throws IOException {
+        // Write to a temp file first so other nodes never read a half-written key
+        Path tmp = Files.createTempFile(dir, fileName, ".tmp");
+        Files.writeString(tmp, content, StandardCharsets.US_ASCII);
+        Files.move(tmp, dir.resolve(fileName), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String toPem(String type, byte[] der) {
+        return "-----BEGIN " + type + "-----\n"
+                + Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(der)
+                + "\n-----END " + type + "-----\n";
+    }
+
+    private void deleteRetiredKeyFiles(Snapshot retained) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(keyDir), "*" + KEY_FILE_SUFFIX)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                String kid = fileName.substring(0, fileName.length() - KEY_FILE_SUFFIX.length());
+                if (!retained.byKid.containsKey(kid)) {
+                    Files.deleteIfExists(file);
+                    Files.deleteIfExists(file.resolveSibling(kid + PUBLIC_KEY_FILE_SUFFIX));
+                    Files.deleteIfExists(file.resolveSibling(kid + CREATED_FILE_SUFFIX));
+                    log.info("Deleted retired JWT key {}", kid);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to clean up retired JWT keys: {}", e.getMessage());
+        }
+    }
+
+    private static SigningKey generateKey(JwtSigningAlgorithm algorithm, Instant createdAt) {
+        KeyPair keyPair = algorithm.newKeyPair();
+        String kid = KID_FORMAT.format(createdAt) + "-" + HexFormat.of().toHexDigits((short) ThreadLocalRandom.current().nextInt());
+        return new SigningKey(kid, keyPair.getPublic(), keyPair.getPrivate(), createdAt);
+    }
+
+    private static PrivateKey readPkcs8(Path file) throws IOException, GeneralSecurityException {
+        PKCS8EncodedKeySpec keySpec = new PKCS8EncodedKeySpec(readPem(file));
+        // PKCS#8 does not name its algorithm up front, so try each supported key type in turn
+        for (JwtSigningAlgorithm candidate : JwtSigningAlgorithm.values()) {
+            try {
+                return KeyFactory.getInstance(candidate.getKeyAlgorithm()).generatePrivate(keySpec);
+            } catch (GeneralSecurityException e) {
+                // Not this key type
+            }
+        }
+        throw new GeneralSecurityException("Unsupported private key type");
+    }
+
+    private static PublicKey readX509(Path file, String keyAlgorithm) throws IOException, GeneralSecurityException {
+        return KeyFactory.getInstance(keyAlgorithm).generatePublic(new X509EncodedKeySpec(readPem(file)));
+    }
+
+    private static byte[] readPem(Path file) throws IOException {
+        String pem = Files.readString(file, StandardCharsets.US_ASCII)
+                .replaceAll("-----(BEGIN|END) [A-Z ]+-----", "")
+                .replaceAll("\\s", "");
+        return Base64.getDecoder().decode(pem);
+    }
+
+    private static PublicKey derivePublicKey(PrivateKey privateKey) throws GeneralSecurityException {
+        // Only RSA CRT keys carry enough to rebuild the public key; EC and Ed25519 keys need their .pub file
+        if (!(privateKey instanceof RSAPrivateCrtKey crtKey)) {
+            throw new GeneralSecurityException("No public key found for " + privateKey.getAlgorithm() + " private key");
+        }
+        return KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(crtKey.getModulus(), crtKey.getPublicExponent()));
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    /**
+     * A single key pair in the ring.
+     */
+    public static final class SigningKey {
+        private final String kid;
+        private final PublicKey publicKey;
+        private final PrivateKey privateKey;
+        private final Instant createdAt;
+        private final JwtSigningAlgorithm algorithm;
+
+        SigningKey(String kid, PublicKey publicKey, PrivateKey privateKey, Instant createdAt) {
+            this.kid = kid;
+            this.publicKey = publicKey;
+            this.privateKey = privateKey;
+            this.createdAt = createdAt;
+            this.algorithm = JwtSigningAlgorithm.forKey(publicKey);
+        }
+
+        public String getKid() {
+            return kid;
+        }
+
+        public PublicKey getPublicKey() {
+            return publicKey;
+        }
+
+        public PrivateKey getPrivateKey() {
+            return privateKey;
+        }
+
+        public Instant getCreatedAt() {
+            return createdAt;
+        }
+
+        public JwtSigningAlgorithm getAlgorithm() {
+            return algorithm;
+        }
+
+        Map<String, Object> toJwk() {
+            return algorithm.toJwk(kid, publicKey);
+        }
+    }
+
+    /**
+     * Immutable view of the ring, swapped atomically on reload.
+     */
+    private static final class Snapshot {
+        private final List<SigningKey> keys;
+        private final Map<String, SigningKey> byKid;
+        private final SigningKey active;
+        private final Map<String, Object> jwkSet;
+        private final String etag;
+
+        private Snapshot(List<SigningKey> keys, Map<String, SigningKey> byKid, SigningKey active,
+                         Map<String, Object> jwkSet, String etag) {
+            this.keys = keys;
+            this.byKid = byKid;
+            this.active = active;
+            this.jwkSet = jwkSet;
+            this.etag = etag;
+        }
+
+        static Snapshot of(List<SigningKey> keys, SigningKey active) {
+            Map<String, SigningKey> byKid = new LinkedHashMap<>();
+            List<Map<String, Object>> jwks = new ArrayList<>();
+            StringBuilder fingerprint = new StringBuilder();
+            for (SigningKey key : keys) {
+                byKid.put(key.getKid(), key);
+                Map<String, Object> jwk = key.toJwk();
+                jwks.add(jwk);
+                fingerprint.append(jwk).append('\n');
+            }
+            Map<String, Object> jwkSet = Map.of("keys", Collections.unmodifiableList(jwks));
+            String etag = "\"" + TokenHashUtil.sha256Hex(fingerprint.toString()).substring(0, 32) + "\"";
+            return new Snapshot(List.copyOf(keys), Collections.unmodifiableMap(byKid), active, jwkSet, etag);
+        }
+    }
+}
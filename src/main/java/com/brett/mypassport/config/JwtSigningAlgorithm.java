@@ -0,0 +1,159 @@
+package com.brett.mypassport.config;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.SignatureAlgorithm;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Supported JWT signing algorithms. Each constant knows how to generate its keys and how to publish
+ * its public key as a JWK, so the key ring, {@code JwtUtil} and the public-key endpoints stay algorithm-agnostic.
+ * Selected with {@code app.jwt.algorithm}; RS256 is the default.
+ */
+public enum JwtSigningAlgorithm {
+
+    RS256("RSA", Jwts.SIG.RS256) {
+        @Override
+        KeyPair generateKeyPair() throws GeneralSecurityException {
+            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+            keyPairGenerator.initialize(2048);
+            return keyPairGenerator.generateKeyPair();
+        }
+
+        @Override
+        void addJwkParameters(PublicKey publicKey, Map<String, Object> jwk) {
+            RSAPublicKey rsaKey = (RSAPublicKey) publicKey;
+            jwk.put("kty", "RSA");
+            jwk.put("n", base64Url(unsigned(rsaKey.getModulus())));
+            jwk.put("e", base64Url(unsigned(rsaKey.getPublicExponent())));
+        }
+    },
+
+    ES256("EC", Jwts.SIG.ES256) {
+        @Override
+        KeyPair generateKeyPair() throws GeneralSecurityException {
+            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+            keyPairGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+            return keyPairGenerator.generateKeyPair();
+        }
+
+        @Override
+        void addJwkParameters(PublicKey publicKey, Map<String, Object> jwk) {
+            ECPublicKey ecKey = (ECPublicKey) publicKey;
+            jwk.put("kty", "EC");
+            jwk.put("crv", "P-256");
+            jwk.put("x", base64Url(fixedLength(ecKey.getW().getAffineX(), 32)));
+            jwk.put("y", base64Url(fixedLength(ecKey.getW().getAffineY(), 32)));
+        }
+    },
+
+    EdDSA("Ed25519", Jwts.SIG.EdDSA) {
+        @Override
+        KeyPair generateKeyPair() throws GeneralSecurityException {
+            return KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+        }
+
+        @Override
+        void addJwkParameters(PublicKey publicKey, Map<String, Object> jwk) {
+            // The X.509 encoding of an Ed25519 key is a fixed 12-byte prefix followed by the raw 32-byte key
+            byte[] encoded = publicKey.getEncoded();
+            jwk.put("kty", "OKP");
+            jwk.put("crv", "Ed25519");
+            jwk.put("x", base64Url(Arrays.copyOfRange(encoded, encoded.length - 32, encoded.length)));
+        }
+    };
+
+    private final String keyAlgorithm;
+    private final SignatureAlgorithm jwaAlgorithm;
+
+    JwtSigningAlgorithm(String keyAlgorithm, SignatureAlgorithm jwaAlgorithm) {
+        this.keyAlgorithm = keyAlgorithm;
+        this.jwaAlgorithm = jwaAlgorithm;
+    }
+
+    /**
+     * @return The JCA key algorithm name, as used by {@link java.security.KeyFactory}
+     */
+    public String getKeyAlgorithm() {
+        return keyAlgorithm;
+    }
+
+    /**
+     * @return The JJWT algorithm used to sign and verify
+     */
+    public SignatureAlgorithm getJwaAlgorithm() {
+        return jwaAlgorithm;
+    }
+
+    abstract KeyPair generateKeyPair() throws GeneralSecurityException;
+
+    abstract void addJwkParameters(PublicKey publicKey, Map<String, Object> jwk);
+
+    /**
+     * Generate a fresh key pair for this algorithm.
+     */
+    public KeyPair newKeyPair() {
+        try {
+            return generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to generate " + name() + " keys", e);
+        }
+    }
+
+    Map<String, Object> toJwk(String kid, PublicKey publicKey) {
+        Map<String, Object> jwk = new LinkedHashMap<>();
+        addJwkParameters(publicKey, jwk);
+        jwk.put("kid", kid);
+        jwk.put("use", "sig");
+        jwk.put("alg", name());
+        return jwk;
+    }
+
+    /**
+     * Identify the algorithm a key pair was generated for.
+     */
+    static JwtSigningAlgorithm forKey(PublicKey publicKey) {
+        String algorithm = publicKey.getAlgorithm();
+        if ("RSA".equals(algorithm)) {
+            return RS256;
+        }
+        if ("EC".equals(algorithm)) {
+            return ES256;
+        }
+        if ("Ed25519".equals(algorithm) || "EdDSA".equals(algorithm)) {
+            return EdDSA;
+        }
+        throw new IllegalArgumentException("Unsupported JWT key algorithm: " + algorithm);
+    }
+
+    private static byte[] unsigned(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        // Drop the sign byte BigInteger adds for values with the high bit set
+        if (bytes.length > 1 && bytes[0] == 0) {
+            return Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        return bytes;
+    }
+
+    private static byte[] fixedLength(BigInteger value, int length) {
+        byte[] bytes = unsigned(value);
+        byte[] padded = new byte[length];
+        System.arraycopy(bytes, 0, padded, length - bytes.length, bytes.length);
+        return padded;
+    }
+
+    private static String base64Url(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
@@ -0,0 +1,45 @@
+package com.brett.mypassport.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Configuration
+public class PasswordEncoderConfig {
+
+    public static final String BCRYPT = "bcrypt";
+
+    /**
+     * Hashes are stored with the id of their encoder ("{bcrypt}$2a$12$..."), so encoders and their parameters can
+     * change without invalidating stored passwords: new hashes use {@code encoder} and current parameters, older
+     * ones still match and are re-hashed on the next successful login. Hashes stored without an id are BCrypt.
+     * BCrypt runs on its own bounded pool; threads defaults to the number of cores.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public BoundedPasswordEncoder passwordEncoder(
+            @Value("${app.security.password-hashing.encoder:" + BCRYPT + "}") String encoderId,
+            @Value("${app.security.password-hashing.bcrypt-strength:10}") int bcryptStrength,
+            @Value("${app.security.password-hashing.threads:0}") int threads,
+            @Value("${app.security.password-hashing.queue-capacity:64}") int queueCapacity,
+            MeterRegistry meterRegistry) {
+        // Further encoders (e.g. Argon2) are added here under a new id; existing ids must keep matching old hashes
+        Map<String, PasswordEncoder> encoders = new HashMap<>();
+        encoders.put(BCRYPT, new BCryptPasswordEncoder(bcryptStrength));
+        if (!encoders.containsKey(encoderId)) {
+            throw new IllegalArgumentException("Unknown password encoder: " + encoderId);
+        }
+        DelegatingPasswordEncoder delegating = new DelegatingPasswordEncoder(encoderId, encoders);
+        // BCrypt matches hashes of any strength; the strength only applies to new hashes
+        delegating.setDefaultPasswordEncoderForMatches(new BCryptPasswordEncoder());
+
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return new BoundedPasswordEncoder(delegating, poolSize, queueCapacity, meterRegistry);
+    }
+}
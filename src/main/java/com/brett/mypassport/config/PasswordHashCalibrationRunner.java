@@ -0,0 +1,77 @@
+package com.brett.mypassport.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Measures how long {@code matches} takes on this host for increasing BCrypt strengths and logs the highest strength
+ * that stays under {@code target-latency}, to pick {@code app.security.password-hashing.bcrypt-strength}. Each step
+ * doubles the cost, so the run stops at the first strength over the target. Meant to be enabled once per host type;
+ * it hashes on the startup thread and competes with traffic while it runs.
+ */
+@Component
+public class PasswordHashCalibrationRunner implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(PasswordHashCalibrationRunner.class);
+
+    private static final int MIN_STRENGTH = 8;
+    private static final int MAX_STRENGTH = 16;
+
+    @Value("${app.security.password-hashing.calibration.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.security.password-hashing.calibration.target-latency:PT0.25S}")
+    private Duration targetLatency;
+
+    @Value("${app.security.password-hashing.calibration.samples:5}")
+    private int samples;
+
+    @Value("${app.security.password-hashing.bcrypt-strength:10}")
+    private int configuredStrength;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        int suggested = 0;
+        long suggestedNanos = 0;
+        for (int strength = MIN_STRENGTH; strength <= MAX_STRENGTH; strength++) {
+            long nanos = medianMatchesNanos(strength);
+            log.info("BCrypt strength {}: matches takes {} ms", strength, nanos / 1_000_000);
+            if (nanos > targetLatency.toNanos()) {
+                break;
+            }
+            suggested = strength;
+            suggestedNanos = nanos;
+        }
+        if (suggested == 0) {
+            log.warn("Even BCrypt strength {} exceeds the target of {} ms on this host; keeping strength {}",
+                    MIN_STRENGTH, targetLatency.toMillis(), configuredStrength);
+            return;
+        }
+        log.info("Suggested app.security.password-hashing.bcrypt-strength: {} ({} ms per match, target {} ms); configured: {}",
+                suggested, suggestedNanos / 1_000_000, targetLatency.toMillis(), configuredStrength);
+    }
+
+    private long medianMatchesNanos(int strength) {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(strength);
+        String hash = encoder.encode("calibration");
+        long[] nanos = new long[Math.max(samples, 1)];
+        for (int i = 0; i < nanos.length; i++) {
+            long start = System.nanoTime();
+            encoder.matches("calibration", hash);
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos[nanos.length / 2];
+    }
+}
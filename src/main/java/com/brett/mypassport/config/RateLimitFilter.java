@@ -0,0 +1,156 @@
+package com.brett.mypassport.config;
+
+import com.brett.mypassport.common.ApiConstants;
+import com.brett.mypassport.common.ApiResponse;
+import com.brett.mypassport.service.RateLimitService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Rejects login, send-code and forgot-password requests over their rate limits (see {@link RateLimitService}) with
+ * 429 before they reach the controller, so an abusive client costs neither password hashing nor emails. Their bodies
+ * are limited to 4 KB (413 Payload Too Large otherwise).
+ */
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final String AUTH_PATH = ApiConstants.API_V1 + "/auth/";
+
+    // Far more than the JSON of any rate-limited endpoint, which are all small forms
+    private static final int MAX_BODY_BYTES = 4 * 1024;
+
+    private static final Map<String, String> ENDPOINTS = Map.of(
+            AUTH_PATH + "login", RateLimitService.LOGIN,
+            AUTH_PATH + "send-code", RateLimitService.SEND_CODE,
+            AUTH_PATH + "forgot-password", RateLimitService.FORGOT_PASSWORD);
+
+    @Autowired
+    @Lazy
+    private RateLimitService rateLimitService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        return !"POST".equals(request.getMethod()) || !ENDPOINTS.containsKey(path(request));
+    }
+
+    @Override
+    protected void doFilterInternal(
+            @NonNull HttpServletRequest request,
+            @NonNull HttpServletResponse response,
+            @NonNull FilterChain filterChain
+    ) throws ServletException, IOException {
+        // The email is read from the JSON body, which is buffered so the controller can still read it. Only up to
+        // MAX_BODY_BYTES of it, so a client cannot make the filter hold an arbitrarily large body in memory.
+        byte[] body = request.getContentLengthLong() > MAX_BODY_BYTES
+                ? null : request.getInputStream().readNBytes(MAX_BODY_BYTES + 1);
+        if (body == null || body.length > MAX_BODY_BYTES) {
+            writeError(response, HttpStatus.PAYLOAD_TOO_LARGE, "Request body is too large.");
+            return;
+        }
+        String endpoint = ENDPOINTS.get(path(request));
+        long waitMillis = rateLimitService.tryAcquire(endpoint, request.getRemoteAddr(), email(body));
+        if (waitMillis > 0) {
+            response.setHeader("Retry-After", Long.toString((waitMillis + 999) / 1000));
+            writeError(response, HttpStatus.TOO_MANY_REQUESTS, "Too many requests. Please try again later.");
+            return;
+        }
+        filterChain.doFilter(new CachedBodyRequest(request, body), response);
+    }
+
+    private void writeError(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        objectMapper.writeValue(response.getOutputStream(), ApiResponse.error(status.value(), message));
+    }
+
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    /**
+     * @return The "email" field of the JSON body, or null if there is none; a malformed body is left to the controller
+     */
+    private String email(byte[] body) {
+        try {
+            JsonNode root = body.length > 0 ? objectMapper.readTree(body) : null;
+            JsonNode email = root != null ? root.get("email") : null;
+            return email != null && email.isTextual() ? email.asText() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static class CachedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream input = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public int read() {
+                    return input.read();
+                }
+
+                @Override
+                public int read(@NonNull byte[] buffer, int offset, int length) {
+                    return input.read(buffer, offset, length);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return input.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(getInputStream(),
+                    encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8));
+        }
+    }
+}
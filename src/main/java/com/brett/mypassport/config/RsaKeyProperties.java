@@ -1,46 +0,0 @@
-package com.brett.mypassport.config;
-
-import org.springframework.context.annotation.Configuration;
-import org.springframework.stereotype.Component;
-import java.security.KeyPair;
-import java.security.KeyPairGenerator;
-import java.security.NoSuchAlgorithmException;
-import java.security.interfaces.RSAPrivateKey;
-import java.security.interfaces.RSAPublicKey;
-import jakarta.annotation.PostConstruct;
-
-@Component
-public class RsaKeyProperties {
-
-    private RSAPublicKey publicKey;
-    private RSAPrivateKey privateKey;
-
-    @PostConstruct
-    public void createKeys() {
-        try {
-            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
-            keyPairGenerator.initialize(2048);
-            KeyPair keyPair = keyPairGenerator.generateKeyPair();
-            this.publicKey = (RSAPublicKey) keyPair.getPublic();
-            this.privateKey = (RSAPrivateKey) keyPair.getPrivate();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Failed to generate RSA keys", e);
-        }
-    }
-
-    public RSAPublicKey getPublicKey() {
-        return publicKey;
-    }
-
-    public void setPublicKey(RSAPublicKey publicKey) {
-        this.publicKey = publicKey;
-    }
-
-    public RSAPrivateKey getPrivateKey() {
-        return privateKey;
-    }
-
-    public void setPrivateKey(RSAPrivateKey privateKey) {
-        this.privateKey = privateKey;
-    }
-}
@@ -0,0 +1,46 @@
+package com.brett.mypassport.config;
+
+import com.brett.mypassport.repository.TokenRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fills in token_hash/refresh_token_hash for rows written before V9 and removes their raw tokens, one short
+ * transaction per batch, so the table is never locked for long. Rows without raw tokens are skipped, so it is safe
+ * to run on every node and every start; once no legacy rows remain it costs a single indexed query.
+ */
+@Component
+public class TokenHashBackfillRunner implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenHashBackfillRunner.class);
+
+    @Autowired
+    private TokenRepository tokenRepository;
+
+    @Value("${app.tokens.hash-backfill.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.tokens.hash-backfill.batch-size:1000}")
+    private int batchSize;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        long total = 0;
+        int updated;
+        do {
+            updated = tokenRepository.backfillTokenHashes(batchSize);
+            total += updated;
+        } while (updated == batchSize);
+        if (total > 0) {
+            log.info("Backfilled token hashes for {} legacy token rows", total);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.brett.mypassport.controller;
 
 import com.brett.mypassport.common.ApiConstants;
+import com.brett.mypassport.common.RawResponse;
 import com.brett.mypassport.dto.LoginRequest;
 import com.brett.mypassport.dto.LoginResponse;
 import com.brett.mypassport.dto.RefreshTokenRequest;
@@ -8,17 +9,24 @@ import com.brett.mypassport.dto.RegisterRequest;
 import com.brett.mypassport.dto.ResetPasswordRequest;
 import com.brett.mypassport.dto.VerificationRequest;
 import com.brett.mypassport.dto.TokenValidationRequest;
+import com.brett.mypassport.dto.BatchPermissionCheckRequest;
 import com.brett.mypassport.dto.PermissionCheckRequest;
 import com.brett.mypassport.dto.PermissionCheckResponse;
 import com.brett.mypassport.service.UserService;
 import com.brett.mypassport.service.VerificationService;
-import com.brett.mypassport.config.RsaKeyProperties;
-import java.security.interfaces.RSAPublicKey;
+import com.brett.mypassport.config.JwtKeyRing;
+import java.security.PublicKey;
+import java.time.Duration;
 import java.util.Base64;
+import java.util.List;
 import java.util.Map;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -50,17 +58,38 @@ public class AuthController {
     private UserService userService;
 
     @Autowired
-    private RsaKeyProperties rsaKeyProperties;
+    private JwtKeyRing jwtKeyRing;
 
-    @Operation(summary = "Get Public Key", description = "Returns the RSA Public Key for token verification.")
+    @Value("${app.jwt.jwks.max-age:PT5M}")
+    private Duration jwksMaxAge;
+
+    @Operation(summary = "Get Public Key", description = "Returns the active public key, its signing algorithm and key ID for token verification.")
     @Order(10)
     @GetMapping("/public-key")
     public Map<String, String> getPublicKey() {
-        RSAPublicKey publicKey = rsaKeyProperties.getPublicKey();
+        JwtKeyRing.SigningKey activeKey = jwtKeyRing.getActiveKey();
+        PublicKey publicKey = activeKey.getPublicKey();
         String publicKeyPEM = "-----BEGIN PUBLIC KEY-----\n" +
                 Base64.getEncoder().encodeToString(publicKey.getEncoded()) +
                 "\n-----END PUBLIC KEY-----";
-        return Map.of("algorithm", "RS256", "publicKey", publicKeyPEM);
+        return Map.of("algorithm", activeKey.getAlgorithm().name(), "kid", activeKey.getKid(), "publicKey", publicKeyPEM);
+    }
+
+    @Operation(summary = "Get JWK Set", description = "Returns all public keys currently accepted for token verification as a standard JWK Set. Supports conditional requests via ETag.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "JWK Set returned"),
+            @ApiResponse(responseCode = "304", description = "JWK Set unchanged since the supplied ETag")
+    })
+    @Order(10)
+    @RawResponse
+    @GetMapping("/jwks")
+    public ResponseEntity<Map<String, Object>> getJwkSet(WebRequest webRequest) {
+        String etag = jwtKeyRing.getJwkSetETag();
+        CacheControl cacheControl = CacheControl.maxAge(jwksMaxAge).cachePublic();
+        if (webRequest.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
+        }
+        return ResponseEntity.ok().eTag(etag).cacheControl(cacheControl).body(jwtKeyRing.getJwkSet());
     }
 
     @Operation(summary = "Check Token", description = "Validates the token signature and expiration, and checks if it has been revoked.")
@@ -85,6 +114,18 @@ public class AuthController {
         return userService.checkPermission(request);
     }
 
+    @Operation(summary = "Check Permissions (Batch)", description = "Evaluates every check against every token for one system. Each token is validated and each user's permissions are loaded once. Returns one result per (token, check) pair, token by token, in the order of the checks.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Permission check results returned"),
+            @ApiResponse(responseCode = "400", description = "Invalid batch request"),
+            @ApiResponse(responseCode = "500", description = "Internal server error")
+    })
+    @Order(12)
+    @PostMapping("/check-permission/batch")
+    public List<PermissionCheckResponse> checkPermissions(@Valid @RequestBody BatchPermissionCheckRequest request) {
+        return userService.checkPermissions(request);
+    }
+
     @Operation(summary = "Send Verification Code", description = "Generates a verification code and sends it to the provided email address. The code expires in 60 seconds.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Verification code sent successfully"),
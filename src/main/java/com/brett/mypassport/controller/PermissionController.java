@@ -2,6 +2,7 @@ package com.brett.mypassport.controller;
 
 import com.brett.mypassport.common.ApiConstants;
 import com.brett.mypassport.dto.PermissionResponse;
+import com.brett.mypassport.dto.SliceResponse;
 import com.brett.mypassport.service.PermissionService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -47,4 +48,16 @@ public class PermissionController {
         Pageable pageable = PageRequest.of(page, size);
         return permissionService.getAllPermissions(sysCode, pageable);
     }
+
+    @Operation(summary = "Scroll Permissions", description = "Retrieves permissions in keyset-paginated slices, without a total count.")
+    @ApiResponse(responseCode = "200", description = "Slice of permissions retrieved successfully")
+    @Order(31)
+    @PreAuthorize("hasAuthority(T(com.brett.mypassport.common.PermissionConstants).PERMISSION_VIEW)")
+    @GetMapping("/scroll")
+    public SliceResponse<PermissionResponse> scrollPermissions(
+            @Parameter(description = "Optional system code to filter permissions by", example = "sys-b") @RequestParam(required = false) String sysCode,
+            @Parameter(description = "Cursor returned with the previous slice; omit for the first slice") @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "30") @Min(value = 1, message = "Page size must be greater than zero") @Max(value = 30, message = "Page size must not be greater than 30") int size) {
+        return permissionService.scrollPermissions(sysCode, cursor, size);
+    }
 }
@@ -3,6 +3,7 @@ package com.brett.mypassport.controller;
 import com.brett.mypassport.common.ApiConstants;
 import com.brett.mypassport.dto.RoleRequest;
 import com.brett.mypassport.dto.RoleResponse;
+import com.brett.mypassport.dto.SliceResponse;
 import com.brett.mypassport.dto.RolePermissionRequest;
 import com.brett.mypassport.service.RoleService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -86,6 +87,21 @@ public class RoleController {
         return roleService.getAllRoles(sysCode, pageable);
     }
 
+    @Operation(summary = "Scroll Roles", description = "Retrieves roles in keyset-paginated slices, without a total count.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Slice of roles retrieved successfully"),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor")
+    })
+    @Order(26)
+    @PreAuthorize("hasAuthority(T(com.brett.mypassport.common.PermissionConstants).ROLE_VIEW)")
+    @GetMapping("/scroll")
+    public SliceResponse<RoleResponse> scrollRoles(
+            @Parameter(description = "Optional system code to filter roles by", example = "sys-b") @RequestParam(required = false) String sysCode,
+            @Parameter(description = "Cursor returned with the previous slice; omit for the first slice") @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") @Min(value = 1, message = "Page size must be greater than zero") @Max(value = 30, message = "Page size must not be greater than 30") int size) {
+        return roleService.scrollRoles(sysCode, cursor, size);
+    }
+
     @Operation(summary = "Get Role by ID", description = "Retrieves details of a specific role.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Role retrieved successfully"),
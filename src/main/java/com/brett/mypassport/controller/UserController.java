@@ -24,6 +24,8 @@ import org.springframework.web.bind.annotation.RequestHeader;
 import jakarta.servlet.http.HttpServletRequest;
 import java.util.List;
 import com.brett.mypassport.dto.DeviceResponse;
+import com.brett.mypassport.dto.SliceResponse;
+import io.swagger.v3.oas.annotations.Parameter;
 import org.springframework.data.domain.Page;
 import org.springframework.core.annotation.Order;
 import org.springframework.data.domain.Page;
@@ -100,6 +102,27 @@ public class UserController {
         return userService.getActiveDevices(userDetails.getUsername(), token, pageable);
     }
 
+    @Operation(summary = "Scroll Active Devices", description = "Retrieves the user's active devices in keyset-paginated slices, without a total count.")
+    @SecurityRequirement(name = "bearerAuth")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Slice of devices retrieved successfully"),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor"),
+            @ApiResponse(responseCode = "403", description = "Unauthorized access")
+    })
+    @Order(18)
+    @GetMapping("/devices/scroll")
+    public SliceResponse<DeviceResponse> scrollActiveDevices(
+            @AuthenticationPrincipal UserDetails userDetails,
+            HttpServletRequest request,
+            @Parameter(description = "Cursor returned with the previous slice; omit for the first slice") @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") @Min(value = 1, message = "Page size must be greater than zero") @Max(value = 30, message = "Page size must not be greater than 30") int size) {
+        if (userDetails == null) {
+            throw new org.springframework.security.access.AccessDeniedException("User not authenticated");
+        }
+        String token = request.getHeader("Authorization");
+        return userService.scrollActiveDevices(userDetails.getUsername(), token, cursor, size);
+    }
+
     @Operation(summary = "Kick Device", description = "Revokes the session for a specific device/token.")
     @SecurityRequirement(name = "bearerAuth")
     @ApiResponses(value = {
@@ -148,6 +171,22 @@ public class UserController {
         return userService.getAllUsers(pageable);
     }
 
+    @Operation(summary = "Scroll Users", description = "Retrieves users in keyset-paginated slices, without a total count. Requires USER_VIEW permission.")
+    @SecurityRequirement(name = "bearerAuth")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Slice of users retrieved successfully"),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor"),
+            @ApiResponse(responseCode = "403", description = "Unauthorized access")
+    })
+    @Order(19)
+    @PreAuthorize("hasAuthority(T(com.brett.mypassport.common.PermissionConstants).USER_VIEW)")
+    @GetMapping("/scroll")
+    public SliceResponse<UserResponse> scrollUsers(
+            @Parameter(description = "Cursor returned with the previous slice; omit for the first slice") @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") @Min(value = 1, message = "Page size must be greater than zero") @Max(value = 30, message = "Page size must not be greater than 30") int size) {
+        return userService.scrollUsers(cursor, size);
+    }
+
     @Operation(summary = "Get User by ID", description = "Retrieves a specific user's details. Requires USER_VIEW permission.")
     @SecurityRequirement(name = "bearerAuth")
     @ApiResponses(value = {
@@ -0,0 +1,51 @@
+package com.brett.mypassport.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+/**
+ * Evaluates every check against every token for one system.
+ * Results are returned token by token, each token's results in the order of {@link #getChecks()}.
+ */
+public class BatchPermissionCheckRequest {
+
+    @NotEmpty(message = "Tokens cannot be empty")
+    @Size(max = 100, message = "At most 100 tokens per batch")
+    private List<@NotBlank(message = "Token cannot be empty") String> tokens;
+
+    @NotBlank(message = "System code cannot be empty")
+    private String sysCode;
+
+    @NotEmpty(message = "Checks cannot be empty")
+    @Size(max = 1000, message = "At most 1000 checks per batch")
+    private List<@NotNull(message = "Check cannot be null") @Valid PermissionCheck> checks;
+
+    public List<String> getTokens() {
+        return tokens;
+    }
+
+    public void setTokens(List<String> tokens) {
+        this.tokens = tokens;
+    }
+
+    public String getSysCode() {
+        return sysCode;
+    }
+
+    public void setSysCode(String sysCode) {
+        this.sysCode = sysCode;
+    }
+
+    public List<PermissionCheck> getChecks() {
+        return checks;
+    }
+
+    public void setChecks(List<PermissionCheck> checks) {
+        this.checks = checks;
+    }
+}
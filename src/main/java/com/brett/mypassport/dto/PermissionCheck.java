@@ -0,0 +1,48 @@
+package com.brett.mypassport.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.validation.constraints.AssertTrue;
+
+/**
+ * A single check of a batch permission request: a permission string, a path (optionally with its HTTP method), or both,
+ * with the same semantics as the fields of {@link PermissionCheckRequest}.
+ */
+public class PermissionCheck {
+
+    private String requiredPermission;
+
+    private String path;
+
+    private String method;
+
+    // A check with neither would always be denied, which is never what the caller meant
+    @JsonIgnore
+    @AssertTrue(message = "Each check needs a requiredPermission or a path")
+    public boolean isRequiredPermissionOrPath() {
+        return (requiredPermission != null && !requiredPermission.isEmpty()) || (path != null && !path.isEmpty());
+    }
+
+    public String getRequiredPermission() {
+        return requiredPermission;
+    }
+
+    public void setRequiredPermission(String requiredPermission) {
+        this.requiredPermission = requiredPermission;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public void setMethod(String method) {
+        this.method = method;
+    }
+}
@@ -0,0 +1,61 @@
+package com.brett.mypassport.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import org.springframework.data.domain.Window;
+
+import java.util.List;
+import java.util.function.Function;
+
+@Schema(description = "A slice of a keyset-paginated list, without a total count")
+public class SliceResponse<T> {
+
+    @Schema(description = "The items of this slice")
+    private List<T> content;
+
+    @Schema(description = "Whether more items follow this slice", example = "true")
+    private boolean hasNext;
+
+    @Schema(description = "Opaque cursor to pass as 'cursor' to fetch the next slice; null on the last slice", example = "MjAyNS0wMS0wMVQxMDowMHw0Mg")
+    private String nextCursor;
+
+    public SliceResponse(List<T> content, boolean hasNext, String nextCursor) {
+        this.content = content;
+        this.hasNext = hasNext;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @param mapper   Maps each row to its response
+     * @param cursorOf The cursor pointing after a row
+     */
+    public static <S, T> SliceResponse<T> of(Window<S> window, Function<S, T> mapper, Function<S, String> cursorOf) {
+        List<T> content = window.getContent().stream().map(mapper).toList();
+        String nextCursor = window.hasNext() && !window.isEmpty() ? cursorOf.apply(window.getContent().get(window.size() - 1)) : null;
+        return new SliceResponse<>(content, window.hasNext(), nextCursor);
+    }
+
+    // Getters and Setters
+    public List<T> getContent() {
+        return content;
+    }
+
+    public void setContent(List<T> content) {
+        this.content = content;
+    }
+
+    public boolean isHasNext() {
+        return hasNext;
+    }
+
+    public void setHasNext(boolean hasNext) {
+        this.hasNext = hasNext;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
@@ -11,15 +11,27 @@ public class Token {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(unique = true, nullable = false, length = 512)
-    private String token;
+    // SHA-256 digests of the raw JWTs; the tokens themselves are not stored
+    @Column(name = "token_hash", columnDefinition = "BINARY(32)", unique = true)
+    private byte[] tokenHash;
 
-    @Column(name = "refresh_token", length = 512)
-    private String refreshToken;
+    @Column(name = "refresh_token_hash", columnDefinition = "BINARY(32)")
+    private byte[] refreshTokenHash;
 
     @Column(name = "token_type")
     private String tokenType = "BEARER";
 
+    // The "sid" claim shared by the access and refresh token issued together
+    @Column(name = "session_id", length = 36)
+    private String sessionId;
+
+    // Rotation family: the session ID of the login the refresh token descends from, and the row it was rotated from
+    @Column(name = "family_id", length = 36)
+    private String familyId;
+
+    @Column(name = "parent_id")
+    private Long parentId;
+
     @Column(name = "ip_address")
     private String ipAddress;
 
@@ -30,6 +42,13 @@ public class Token {
 
     private boolean expired;
 
+    // When the access token and the refresh token of the session expire; the session is usable until the latter
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
+
+    @Column(name = "refresh_expires_at")
+    private LocalDateTime refreshExpiresAt;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
     private User user;
@@ -55,10 +74,10 @@ public class Token {
     public Token() {
     }
 
-    public Token(User user, String token, String refreshToken, String tokenType, boolean revoked, boolean expired) {
+    public Token(User user, byte[] tokenHash, byte[] refreshTokenHash, String tokenType, boolean revoked, boolean expired) {
         this.user = user;
-        this.token = token;
-        this.refreshToken = refreshToken;
+        this.tokenHash = tokenHash;
+        this.refreshTokenHash = refreshTokenHash;
         this.tokenType = tokenType;
         this.revoked = revoked;
         this.expired = expired;
@@ -73,20 +92,20 @@ public class Token {
         this.id = id;
     }
 
-    public String getToken() {
-        return token;
+    public byte[] getTokenHash() {
+        return tokenHash;
     }
 
-    public void setToken(String token) {
-        this.token = token;
+    public void setTokenHash(byte[] tokenHash) {
+        this.tokenHash = tokenHash;
     }
 
-    public String getRefreshToken() {
-        return refreshToken;
+    public byte[] getRefreshTokenHash() {
+        return refreshTokenHash;
     }
 
-    public void setRefreshToken(String refreshToken) {
-        this.refreshToken = refreshToken;
+    public void setRefreshTokenHash(byte[] refreshTokenHash) {
+        this.refreshTokenHash = refreshTokenHash;
     }
 
     public String getTokenType() {
@@ -121,6 +140,30 @@ public class Token {
         this.user = user;
     }
 
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public String getFamilyId() {
+        return familyId;
+    }
+
+    public void setFamilyId(String familyId) {
+        this.familyId = familyId;
+    }
+
+    public Long getParentId() {
+        return parentId;
+    }
+
+    public void setParentId(Long parentId) {
+        this.parentId = parentId;
+    }
+
     public String getIpAddress() {
         return ipAddress;
     }
@@ -137,7 +180,31 @@ public class Token {
         this.deviceInfo = deviceInfo;
     }
 
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public LocalDateTime getRefreshExpiresAt() {
+        return refreshExpiresAt;
+    }
+
+    public void setRefreshExpiresAt(LocalDateTime refreshExpiresAt) {
+        this.refreshExpiresAt = refreshExpiresAt;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
 }
@@ -25,6 +25,13 @@ public class User {
     @Column(name = "avatar_url")
     private String avatarUrl;
 
+    @Column(name = "authority_version", nullable = false)
+    private int authorityVersion;
+
+    // Epoch seconds before which every token of the user is revoked; null if the user never revoked them all
+    @Column(name = "tokens_valid_after")
+    private Long tokensValidAfter;
+
     @Column(name = "created_at", updatable = false)
     private LocalDateTime createdAt;
 
@@ -92,6 +99,22 @@ public class User {
         this.avatarUrl = avatarUrl;
     }
 
+    public int getAuthorityVersion() {
+        return authorityVersion;
+    }
+
+    public void setAuthorityVersion(int authorityVersion) {
+        this.authorityVersion = authorityVersion;
+    }
+
+    public Long getTokensValidAfter() {
+        return tokensValidAfter;
+    }
+
+    public void setTokensValidAfter(Long tokensValidAfter) {
+        this.tokensValidAfter = tokensValidAfter;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -0,0 +1,60 @@
+package com.brett.mypassport.repository;
+
+import com.brett.mypassport.entity.EmailOutboxMessage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Claims and retry times use the database clock, so nodes with skewed clocks agree on them.
+ */
+@Repository
+public interface EmailOutboxRepository extends JpaRepository<EmailOutboxMessage, Long> {
+
+    /**
+     * Claim up to {@code limit} due messages, oldest first, that no other worker holds.
+     * @return The number of messages claimed
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            UPDATE email_outbox
+            SET claimed_by = :owner, claimed_until = TIMESTAMPADD(SECOND, :seconds, CURRENT_TIMESTAMP(3))
+            WHERE status = 'PENDING' AND next_attempt_at <= CURRENT_TIMESTAMP(3)
+              AND (claimed_until IS NULL OR claimed_until < CURRENT_TIMESTAMP(3))
+            ORDER BY next_attempt_at, id
+            LIMIT :limit
+            """, nativeQuery = true)
+    int claim(String owner, long seconds, int limit);
+
+    /**
+     * Messages the worker has claimed and not yet sent or released.
+     */
+    @Query(value = """
+            SELECT * FROM email_outbox
+            WHERE claimed_by = :owner AND status = 'PENDING' AND claimed_until >= CURRENT_TIMESTAMP(3)
+            ORDER BY id
+            """, nativeQuery = true)
+    List<EmailOutboxMessage> findClaimedBy(String owner);
+
+    /**
+     * Record a failed attempt and release the claim, scheduling a retry after {@code delaySeconds}
+     * or giving up with status DEAD.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            UPDATE email_outbox
+            SET status = :status, attempts = attempts + 1, last_error = :error,
+                next_attempt_at = TIMESTAMPADD(SECOND, :delaySeconds, CURRENT_TIMESTAMP(3)),
+                claimed_by = NULL, claimed_until = NULL
+            WHERE id = :id AND claimed_by = :owner
+            """, nativeQuery = true)
+    int markFailed(Long id, String owner, String status, String error, long delaySeconds);
+
+    long countByStatus(EmailOutboxMessage.Status status);
+}
@@ -1,6 +1,10 @@
 package com.brett.mypassport.repository;
 
 import com.brett.mypassport.entity.Permission;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
@@ -27,4 +31,11 @@ public interface PermissionRepository extends JpaRepository<Permission, Long> {
      * Find permissions by system code with pagination.
      */
     org.springframework.data.domain.Page<Permission> findBySysCode(String sysCode, org.springframework.data.domain.Pageable pageable);
+
+    /**
+     * Keyset-paginated permissions; sort by {@link com.brett.mypassport.common.KeysetCursor#ORDER}.
+     */
+    Window<Permission> findBy(ScrollPosition position, Limit limit, Sort sort);
+
+    Window<Permission> findBySysCode(String sysCode, ScrollPosition position, Limit limit, Sort sort);
 }
@@ -1,6 +1,10 @@
 package com.brett.mypassport.repository;
 
 import com.brett.mypassport.entity.Role;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
@@ -33,4 +37,11 @@ public interface RoleRepository extends JpaRepository<Role, Long> {
      * Find roles by system code with pagination.
      */
     org.springframework.data.domain.Page<Role> findBySysCode(String sysCode, org.springframework.data.domain.Pageable pageable);
+
+    /**
+     * Keyset-paginated roles; sort by {@link com.brett.mypassport.common.KeysetCursor#ORDER}.
+     */
+    Window<Role> findBy(ScrollPosition position, Limit limit, Sort sort);
+
+    Window<Role> findBySysCode(String sysCode, ScrollPosition position, Limit limit, Sort sort);
 }
@@ -0,0 +1,47 @@
+package com.brett.mypassport.repository;
+
+import com.brett.mypassport.entity.SchedulerLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Lease updates compare and set expiries with the database clock, so nodes with skewed clocks agree on them.
+ */
+@Repository
+public interface SchedulerLeaseRepository extends JpaRepository<SchedulerLease, String> {
+
+    /**
+     * Take the lease if it is free or expired, or extend it if the owner already holds it.
+     * @return 1 if the owner now holds the lease, 0 otherwise (including when no row exists yet)
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            UPDATE scheduler_leases
+            SET owner = :owner, expires_at = TIMESTAMPADD(SECOND, :seconds, CURRENT_TIMESTAMP)
+            WHERE name = :name AND (owner = :owner OR expires_at < CURRENT_TIMESTAMP)
+            """, nativeQuery = true)
+    int tryAcquire(String name, String owner, long seconds);
+
+    /**
+     * Insert the lease row, already expired, unless it exists.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            INSERT IGNORE INTO scheduler_leases (name, owner, expires_at)
+            VALUES (:name, '', TIMESTAMP '1970-01-02 00:00:00')
+            """, nativeQuery = true)
+    int createIfAbsent(String name);
+
+    @Transactional
+    @Modifying
+    @Query(value = """
+            UPDATE scheduler_leases SET expires_at = CURRENT_TIMESTAMP
+            WHERE name = :name AND owner = :owner
+            """, nativeQuery = true)
+    int release(String name, String owner);
+}
@@ -0,0 +1,67 @@
+package com.brett.mypassport.repository;
+
+import com.brett.mypassport.entity.Token;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Batched inserts of token rows, which Spring Data cannot express: a multi-row statement with a variable number of rows.
+ */
+@Repository
+public class TokenBatchRepository {
+
+    private static final String INSERT = """
+            INSERT IGNORE INTO tokens (user_id, token_hash, refresh_token_hash, token_type, session_id, family_id, parent_id,
+                                       ip_address, device_info, revoked, expired, expires_at, refresh_expires_at,
+                                       created_at, updated_at)
+            VALUES\s""";
+    private static final String ROW = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Insert the tokens in one statement. Tokens whose hash is already stored are skipped, so inserting the same
+     * token twice is harmless.
+     * @return The number of rows inserted
+     */
+    public int insertIgnoreAll(List<Token> tokens) {
+        if (tokens.isEmpty()) {
+            return 0;
+        }
+        StringBuilder sql = new StringBuilder(INSERT);
+        List<Object> args = new ArrayList<>(tokens.size() * 15);
+        for (Token token : tokens) {
+            if (!args.isEmpty()) {
+                sql.append(", ");
+            }
+            sql.append(ROW);
+            args.add(token.getUser().getId());
+            args.add(token.getTokenHash());
+            args.add(token.getRefreshTokenHash());
+            args.add(token.getTokenType());
+            args.add(token.getSessionId());
+            args.add(token.getFamilyId());
+            args.add(token.getParentId());
+            args.add(token.getIpAddress());
+            args.add(token.getDeviceInfo());
+            args.add(token.isRevoked());
+            args.add(token.isExpired());
+            args.add(timestamp(token.getExpiresAt()));
+            args.add(timestamp(token.getRefreshExpiresAt()));
+            args.add(timestamp(token.getCreatedAt()));
+            args.add(timestamp(token.getCreatedAt()));
+        }
+        return jdbcTemplate.update(sql.toString(), args.toArray());
+    }
+
+    private static Timestamp timestamp(LocalDateTime value) {
+        return value != null ? Timestamp.valueOf(value) : null;
+    }
+}
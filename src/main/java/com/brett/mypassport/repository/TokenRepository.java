@@ -1,33 +1,116 @@
 package com.brett.mypassport.repository;
 
 import com.brett.mypassport.entity.Token;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface TokenRepository extends JpaRepository<Token, Long> {
 
+    /**
+     * Sessions of the user that are not revoked and whose refresh token has not expired, i.e. that can still be used.
+     * A range scan of idx_tokens_user_revoked_refresh_expires ({@code expired} is only ever set together with
+     * {@code revoked}, so it needs no condition of its own).
+     * @param now The current time
+     */
     @Query(value = """
-            select t from Token t inner join User u\s
-            on t.user.id = u.id\s
-            where u.id = :id and (t.expired = false and t.revoked = false)\s
+            select t from Token t
+            where t.user.id = :id and t.revoked = false and t.refreshExpiresAt > :now
             """)
-    List<Token> findAllValidTokensByUser(Long id);
+    Page<Token> findAllValidTokensByUser(Long id, LocalDateTime now, Pageable pageable);
 
-    @Query(value = """
-            select t from Token t inner join User u\s
-            on t.user.id = u.id\s
-            where u.id = :id and (t.expired = false and t.revoked = false)\s
+    /**
+     * Revoke the session unless it already is. The condition makes concurrent revocations (e.g. two refreshes
+     * of the same refresh token) safe: exactly one of them updates the row.
+     * Bulk updates bypass the entity callbacks, so updated_at is set here.
+     * @return 1 if this call revoked the session, 0 if it does not exist or was already revoked
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+            update Token t set t.revoked = true, t.expired = true, t.updatedAt = :now
+            where t.id = :id and t.revoked = false
+            """)
+    int revokeById(Long id, LocalDateTime now);
+
+    /**
+     * Revoke every session of the user in one statement, skipping those already revoked.
+     * @return The number of sessions this call revoked
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+            update Token t set t.revoked = true, t.expired = true, t.updatedAt = :now
+            where t.user.id = :userId and t.revoked = false
             """)
-    Page<Token> findAllValidTokensByUser(Long id, Pageable pageable);
+    int revokeAllByUser(Long userId, LocalDateTime now);
 
-    Optional<Token> findByToken(String token);
+    /**
+     * When the row's refresh token was rotated, i.e. exchanged for a newer one.
+     * @return The creation time of the row that replaced it, or null if it was not rotated
+     */
+    @Query("select max(t.createdAt) from Token t where t.parentId = :parentId")
+    LocalDateTime findRotatedAtByParentId(Long parentId);
+
+    @Query("select t.sessionId from Token t where t.familyId = :familyId and t.revoked = false")
+    List<String> findValidSessionIdsByFamilyId(String familyId);
+
+    /**
+     * Revoke every session of a rotation family. Runs in its own transaction, so the revocation is kept when the
+     * refresh that detected the reuse fails.
+     * @return The number of sessions this call revoked
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Modifying
+    @Query("""
+            update Token t set t.revoked = true, t.expired = true, t.updatedAt = :now
+            where t.familyId = :familyId and t.revoked = false
+            """)
+    int revokeAllByFamilyId(String familyId, LocalDateTime now);
 
-    Optional<Token> findByRefreshToken(String refreshToken);
+    /**
+     * Keyset-paginated valid tokens of a user; sort by {@link com.brett.mypassport.common.KeysetCursor#ORDER}.
+     */
+    Window<Token> findByUserIdAndRevokedFalseAndRefreshExpiresAtAfter(Long userId, LocalDateTime now, ScrollPosition position, Limit limit, Sort sort);
+
+    Optional<Token> findByTokenHash(byte[] tokenHash);
+
+    /**
+     * IDs of the oldest sessions created before the cutoff, for {@code TokenReaperService}.
+     */
+    @Query("select t.id from Token t where t.createdAt < :cutoff order by t.createdAt, t.id")
+    List<Long> findIdsCreatedBefore(LocalDateTime cutoff, Limit limit);
+
+    Optional<Token> findByRefreshTokenHash(byte[] refreshTokenHash);
+
+    /**
+     * Hash up to {@code batchSize} rows that still hold the raw tokens from before V9, and clear the raw tokens.
+     * MySQL applies the assignments left to right, so the hashes are computed before the tokens are cleared.
+     * @return The number of rows updated; fewer than {@code batchSize} means the backfill is complete
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            UPDATE tokens
+            SET token_hash = UNHEX(SHA2(token, 256)),
+                refresh_token_hash = UNHEX(SHA2(refresh_token, 256)),
+                token = NULL, refresh_token = NULL
+            WHERE token IS NOT NULL
+            LIMIT :batchSize
+            """, nativeQuery = true)
+    int backfillTokenHashes(int batchSize);
 }
@@ -1,9 +1,21 @@
 package com.brett.mypassport.repository;
 
 import com.brett.mypassport.entity.User;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -15,4 +27,103 @@ public interface UserRepository extends JpaRepository<User, Long> {
     boolean existsByEmail(String email);
 
     boolean existsByUsername(String username);
+
+    /**
+     * One row per (role, permission) pair granted to the user, and one row with a null permission
+     * for each role without permissions. Loads every grant in a single query instead of walking the lazy associations.
+     */
+    @Query("""
+            select u.username as username, r.sysCode as sysCode, r.name as roleName,
+                   p.name as permissionName, p.sysCode as permissionSysCode
+            from User u join u.roles r left join r.permissions p
+            where u.username = :username
+            """)
+    List<AuthorityRow> findAuthorityRowsByUsername(String username);
+
+    /**
+     * {@link #findAuthorityRowsByUsername} for several users in one query.
+     */
+    @Query("""
+            select u.username as username, r.sysCode as sysCode, r.name as roleName,
+                   p.name as permissionName, p.sysCode as permissionSysCode
+            from User u join u.roles r left join r.permissions p
+            where u.username in :usernames
+            """)
+    List<AuthorityRow> findAuthorityRowsByUsernameIn(Collection<String> usernames);
+
+    /**
+     * A page of users without their password hashes or associations.
+     */
+    @Query(value = """
+            select u.id as id, u.username as username, u.email as email, u.avatarUrl as avatarUrl,
+                   u.authorityVersion as authorityVersion, u.createdAt as createdAt, u.updatedAt as updatedAt
+            from User u
+            """, countQuery = "select count(u) from User u")
+    Page<UserSummary> findAllSummaries(Pageable pageable);
+
+    /**
+     * Keyset-paginated users; sort by {@link com.brett.mypassport.common.KeysetCursor#ORDER}.
+     */
+    Window<UserSummary> findSummariesBy(ScrollPosition position, Limit limit, Sort sort);
+
+    Optional<UserSummary> findSummaryById(Long id);
+
+    Optional<UserSummary> findSummaryByUsername(String username);
+
+    @Query("select u.authorityVersion from User u where u.username = :username")
+    Optional<Integer> findAuthorityVersionByUsername(String username);
+
+    @Query("select u.tokensValidAfter from User u where u.username = :username")
+    Optional<Long> findTokensValidAfterByUsername(String username);
+
+    @Query("select u.username from User u join u.roles r where r.id = :roleId")
+    List<String> findUsernamesByRoleId(Long roleId);
+
+    /**
+     * Replace the user's password hash, unless it changed since {@code oldHash} was read.
+     * @return The number of users updated
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.password = :newHash WHERE u.id = :id AND u.password = :oldHash")
+    int updatePasswordIfUnchanged(Long id, String oldHash, String newHash);
+
+    /**
+     * Bump the authority version of every user holding the role.
+     * @return The number of users updated
+     */
+    @Modifying
+    @Query(value = """
+            UPDATE users SET authority_version = authority_version + 1
+            WHERE id IN (SELECT user_id FROM user_roles WHERE role_id = :roleId)
+            """, nativeQuery = true)
+    int incrementAuthorityVersionByRoleId(Long roleId);
+
+    interface AuthorityRow {
+        String getUsername();
+
+        String getSysCode();
+
+        String getRoleName();
+
+        String getPermissionName();
+
+        String getPermissionSysCode();
+    }
+
+    interface UserSummary {
+        Long getId();
+
+        String getUsername();
+
+        String getEmail();
+
+        String getAvatarUrl();
+
+        int getAuthorityVersion();
+
+        LocalDateTime getCreatedAt();
+
+        LocalDateTime getUpdatedAt();
+    }
 }
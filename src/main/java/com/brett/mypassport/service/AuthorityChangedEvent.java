@@ -0,0 +1,12 @@
+package com.brett.mypassport.service;
+
+import java.util.Collection;
+
+/**
+ * Published by {@link AuthorityVersionService} on every node when users' roles or permissions have changed,
+ * after the change has committed. Listeners drop whatever they derived from the old grants.
+ * @param usernames The affected users
+ * @param origin    True only on the node that committed the change, for work that must happen once per cluster
+ */
+public record AuthorityChangedEvent(Collection<String> usernames, boolean origin) {
+}
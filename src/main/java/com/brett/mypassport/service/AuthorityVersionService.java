@@ -0,0 +1,132 @@
+package com.brett.mypassport.service;
+
+import com.brett.mypassport.entity.User;
+import com.brett.mypassport.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Tracks the per-user authority version that access tokens with embedded authorities are checked against.
+ * <p>
+ * The version lives in {@code users.authority_version}; each node caches it for a short time so the JWT filter
+ * does not query the database on every request. A grant change bumps the version and, once its transaction has
+ * committed, evicts the cached value locally and on every other node through a Redis pub/sub channel.
+ * If the message is lost the cache TTL bounds how long a node keeps accepting the old tokens.
+ * Each notification is also published locally as an {@link AuthorityChangedEvent}.
+ */
+@Service
+public class AuthorityVersionService {
+
+    private static final Logger log = LoggerFactory.getLogger(AuthorityVersionService.class);
+
+    private static final String AUTHORITY_CHANNEL = "authority_changes";
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Value("${app.jwt.authority-claims.version-cache-ttl:PT30S}")
+    private Duration versionCacheTtl;
+
+    @Value("${app.jwt.authority-claims.version-cache-max-size:100000}")
+    private long versionCacheMaxSize;
+
+    // Username -> current authority version; users that do not exist are cached as empty
+    private Cache<String, Optional<Integer>> versions;
+
+    @PostConstruct
+    public void init() {
+        this.versions = Caffeine.newBuilder()
+                .maximumSize(versionCacheMaxSize)
+                .expireAfterWrite(versionCacheTtl)
+                .build();
+        try {
+            listenerContainer.addMessageListener(
+                    (message, pattern) -> invalidateLocal(List.of(new String(message.getBody(), StandardCharsets.UTF_8)), false),
+                    new ChannelTopic(AUTHORITY_CHANNEL));
+        } catch (DataAccessException e) {
+            // The listener stays registered; it is subscribed when TokenRevocationService restarts the container
+            log.warn("Failed to subscribe to authority changes; relying on the version cache TTL until Redis is back: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return The user's current authority version, or null if the user does not exist
+     */
+    public Integer getCurrentVersion(String username) {
+        return versions.get(username, userRepository::findAuthorityVersionByUsername).orElse(null);
+    }
+
+    /**
+     * Bump the version of a user whose roles changed. Must be called inside the transaction that changes them.
+     */
+    public void bumpUser(User user) {
+        user.setAuthorityVersion(user.getAuthorityVersion() + 1);
+        evictAfterCommit(List.of(user.getUsername()));
+    }
+
+    /**
+     * Bump the version of every user holding the role, after its name, system or permissions changed.
+     * Must be called inside the transaction that changes the role.
+     */
+    public void bumpRole(Long roleId) {
+        List<String> usernames = userRepository.findUsernamesByRoleId(roleId);
+        if (usernames.isEmpty()) {
+            return;
+        }
+        userRepository.incrementAuthorityVersionByRoleId(roleId);
+        evictAfterCommit(usernames);
+    }
+
+    // The version goes first, then listeners drop what they derived from the old grants (cached UserDetails,
+    // compiled permission matchers...). Those caches are labelled with the version they were built for and
+    // re-checked against it on every read, so an entry a concurrent request builds from the old grants after the
+    // event is never served once the new version is visible.
+    private void invalidateLocal(Collection<String> usernames, boolean origin) {
+        versions.invalidateAll(usernames);
+        eventPublisher.publishEvent(new AuthorityChangedEvent(usernames, origin));
+    }
+
+    // Evicting before the commit would let a concurrent request cache the old version again
+    private void evictAfterCommit(Collection<String> usernames) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                invalidateLocal(usernames, true);
+                try {
+                    usernames.forEach(username -> redisTemplate.convertAndSend(AUTHORITY_CHANNEL, username));
+                } catch (DataAccessException e) {
+                    log.warn("Failed to publish authority changes; other nodes pick them up within {}: {}",
+                            versionCacheTtl, e.getMessage());
+                }
+            }
+        });
+    }
+}
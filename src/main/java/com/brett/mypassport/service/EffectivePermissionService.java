@@ -0,0 +1,256 @@
+package com.brett.mypassport.service;
+
+import com.brett.mypassport.repository.UserRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Materialized snapshots of each user's effective roles and permissions, grouped by sysCode.
+ * <p>
+ * A snapshot is stored as a Redis hash ("effective_permissions:&lt;username&gt;") holding the authority version
+ * it was built for and one JSON field per system, so token issuing, {@code UserDetails} loading and permission
+ * checks read one hash instead of joining users, roles and permissions. A snapshot is only used while its version
+ * is current (see {@link AuthorityVersionService}); otherwise it is rebuilt from the database. Grant changes rebuild
+ * the snapshots of every affected user in the background once committed, so the next read finds them ready.
+ * Idle snapshots expire after {@code app.security.permission-snapshots.ttl}. Without Redis, snapshots are built
+ * from the database on every read.
+ */
+@Service
+public class EffectivePermissionService {
+
+    private static final Logger log = LoggerFactory.getLogger(EffectivePermissionService.class);
+
+    private static final String KEY_PREFIX = "effective_permissions:";
+    private static final String VERSION_FIELD = "version";
+    private static final String SYSTEM_FIELD_PREFIX = "sys:";
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private TaskExecutor taskExecutor;
+
+    @Value("${app.security.permission-snapshots.ttl:P1D}")
+    private Duration ttl;
+
+    /**
+     * @param currentVersion The user's current authority version, as already known by the caller
+     * @return The user's snapshot for that version, or null if the user does not exist
+     */
+    public Snapshot getSnapshot(String username, int currentVersion) {
+        try {
+            Snapshot stored = read(username);
+            if (stored != null && stored.version() == currentVersion) {
+                return stored;
+            }
+        } catch (DataAccessException | JsonProcessingException e) {
+            log.warn("Failed to read the permission snapshot of {}; building it from the database: {}", username, e.getMessage());
+        }
+        return rebuild(username);
+    }
+
+    /**
+     * Batch variant of {@link #getSnapshot} for a page of users: one pipelined Redis round trip, and for the users
+     * whose snapshot is missing or stale a single database query and one more pipelined round trip to store them.
+     * @param currentVersions Username -> the user's current authority version, as already known by the caller
+     * @return Username -> snapshot
+     */
+    public Map<String, Snapshot> getSnapshots(Map<String, Integer> currentVersions) {
+        Map<String, Snapshot> snapshots = new HashMap<>();
+        if (currentVersions.isEmpty()) {
+            return snapshots;
+        }
+        List<String> usernames = new ArrayList<>(currentVersions.keySet());
+        try {
+            List<Object> hashes = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) {
+                    usernames.forEach(username -> operations.opsForHash().entries(KEY_PREFIX + username));
+                    return null;
+                }
+            });
+            for (int i = 0; i < usernames.size(); i++) {
+                @SuppressWarnings("unchecked")
+                Snapshot stored = parse((Map<Object, Object>) hashes.get(i));
+                if (stored != null && stored.version() == currentVersions.get(usernames.get(i))) {
+                    snapshots.put(usernames.get(i), stored);
+                }
+            }
+        } catch (DataAccessException | JsonProcessingException e) {
+            log.warn("Failed to read {} permission snapshots; building them from the database: {}", usernames.size(), e.getMessage());
+        }
+        List<String> missing = usernames.stream().filter(username -> !snapshots.containsKey(username)).toList();
+        if (!missing.isEmpty()) {
+            Map<String, List<UserRepository.AuthorityRow>> rowsByUser = new HashMap<>();
+            for (UserRepository.AuthorityRow row : userRepository.findAuthorityRowsByUsernameIn(missing)) {
+                rowsByUser.computeIfAbsent(row.getUsername(), k -> new ArrayList<>()).add(row);
+            }
+            Map<String, Snapshot> built = new HashMap<>();
+            for (String username : missing) {
+                built.put(username, build(currentVersions.get(username), rowsByUser.getOrDefault(username, List.of())));
+            }
+            try {
+                write(built);
+            } catch (DataAccessException | JsonProcessingException e) {
+                log.warn("Failed to store {} permission snapshots: {}", built.size(), e.getMessage());
+            }
+            snapshots.putAll(built);
+        }
+        return snapshots;
+    }
+
+    /**
+     * Pre-build the snapshots of users whose grants changed. Only the committing node does so; the others merely
+     * see a newer version on their next read.
+     */
+    @EventListener
+    public void onAuthorityChanged(AuthorityChangedEvent event) {
+        if (!event.origin()) {
+            return;
+        }
+        for (String username : event.usernames()) {
+            taskExecutor.execute(() -> rebuild(username));
+        }
+    }
+
+    /**
+     * Build the snapshot from the database and store it.
+     * The version is read before the grants: a change committed in between leaves a snapshot labelled with the
+     * older version, which the next read replaces.
+     * @return The snapshot, or null if the user does not exist
+     */
+    private Snapshot rebuild(String username) {
+        Integer version = userRepository.findAuthorityVersionByUsername(username).orElse(null);
+        if (version == null) {
+            return null;
+        }
+        Snapshot snapshot = build(version, userRepository.findAuthorityRowsByUsername(username));
+        store(username, snapshot);
+        return snapshot;
+    }
+
+    private Snapshot build(int version, List<UserRepository.AuthorityRow> rows) {
+        Map<String, Set<String>> roles = new TreeMap<>();
+        Map<String, Set<String>> permissions = new TreeMap<>();
+        Map<String, Set<String>> scopedPermissions = new TreeMap<>();
+        for (UserRepository.AuthorityRow row : rows) {
+            roles.computeIfAbsent(row.getSysCode(), k -> new LinkedHashSet<>()).add(row.getRoleName());
+            if (row.getPermissionName() != null) {
+                permissions.computeIfAbsent(row.getSysCode(), k -> new LinkedHashSet<>()).add(row.getPermissionName());
+                if (row.getSysCode().equals(row.getPermissionSysCode())) {
+                    scopedPermissions.computeIfAbsent(row.getSysCode(), k -> new LinkedHashSet<>()).add(row.getPermissionName());
+                }
+            }
+        }
+        Map<String, SystemGrants> systems = new TreeMap<>();
+        roles.forEach((sysCode, roleNames) -> systems.put(sysCode, new SystemGrants(
+                roleNames,
+                permissions.getOrDefault(sysCode, Collections.emptySet()),
+                scopedPermissions.getOrDefault(sysCode, Collections.emptySet()))));
+        return new Snapshot(version, systems);
+    }
+
+    private void store(String username, Snapshot snapshot) {
+        try {
+            write(Map.of(username, snapshot));
+        } catch (DataAccessException | JsonProcessingException e) {
+            log.warn("Failed to store the permission snapshot of {}: {}", username, e.getMessage());
+        }
+    }
+
+    private Snapshot read(String username) throws JsonProcessingException {
+        return parse(redisTemplate.opsForHash().entries(KEY_PREFIX + username));
+    }
+
+    private Snapshot parse(Map<Object, Object> hash) throws JsonProcessingException {
+        Object version = hash.get(VERSION_FIELD);
+        if (version == null) {
+            return null;
+        }
+        Map<String, SystemGrants> systems = new TreeMap<>();
+        for (Map.Entry<Object, Object> field : hash.entrySet()) {
+            String name = (String) field.getKey();
+            if (name.startsWith(SYSTEM_FIELD_PREFIX)) {
+                systems.put(name.substring(SYSTEM_FIELD_PREFIX.length()),
+                        objectMapper.readValue((String) field.getValue(), SystemGrants.class));
+            }
+        }
+        return new Snapshot(Integer.parseInt((String) version), systems);
+    }
+
+    /**
+     * Store the snapshots in one pipelined round trip.
+     * @param snapshots Username -> snapshot
+     */
+    private void write(Map<String, Snapshot> snapshots) throws JsonProcessingException {
+        Map<String, Map<String, String>> hashes = new HashMap<>();
+        for (Map.Entry<String, Snapshot> snapshot : snapshots.entrySet()) {
+            Map<String, String> hash = new HashMap<>();
+            hash.put(VERSION_FIELD, Integer.toString(snapshot.getValue().version()));
+            for (Map.Entry<String, SystemGrants> system : snapshot.getValue().systems().entrySet()) {
+                hash.put(SYSTEM_FIELD_PREFIX + system.getKey(), objectMapper.writeValueAsString(system.getValue()));
+            }
+            hashes.put(KEY_PREFIX + snapshot.getKey(), hash);
+        }
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                // Replace each whole hash atomically, so a reader never sees systems of two different versions
+                hashes.forEach((key, hash) -> {
+                    operations.multi();
+                    operations.delete(key);
+                    operations.opsForHash().putAll(key, hash);
+                    operations.expire(key, ttl);
+                    operations.exec();
+                });
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @param version The authority version the snapshot was built for
+     * @param systems sysCode -> grants through the roles of that system
+     */
+    public record Snapshot(int version, Map<String, SystemGrants> systems) {
+    }
+
+    /**
+     * @param roles             Names of the user's roles of the system
+     * @param permissions       Names of every permission granted through those roles
+     * @param scopedPermissions The subset of permissions that also belong to the system, which check-permission matches
+     */
+    public record SystemGrants(Set<String> roles, Set<String> permissions, Set<String> scopedPermissions) {
+    }
+}
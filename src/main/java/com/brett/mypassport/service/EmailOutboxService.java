@@ -0,0 +1,307 @@
+package com.brett.mypassport.service;
+
+import com.brett.mypassport.entity.EmailOutboxMessage;
+import com.brett.mypassport.repository.EmailOutboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable outbox for outgoing email, so requests return without waiting for SMTP.
+ * <p>
+ * Requests insert into the email_outbox table. A pool of {@code workers} threads on each node claims due messages in
+ * batches (a claim expires after {@code claim-timeout}, so messages of a node that dies are sent by another) and
+ * sends each batch over a single SMTP connection. Failed messages are retried with exponential backoff, from
+ * {@code initial-backoff} up to {@code max-backoff}, and marked DEAD after {@code max-attempts}. Sent messages are
+ * deleted. Delivery is at least once: a message whose deletion fails after sending is sent again. A message queued
+ * with an expiry is deleted unsent once it is past it, or would be by its next retry.
+ * <p>
+ * Published metrics: "mail.outbox.depth" and "mail.outbox.dead" (rows by status), the "mail.send" timer (one SMTP
+ * batch), and the "mail.sent", "mail.send.failures", "mail.dead_lettered" and "mail.expired" counters.
+ */
+@Service
+public class EmailOutboxService {
+
+    private static final Logger log = LoggerFactory.getLogger(EmailOutboxService.class);
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    @Autowired
+    private EmailOutboxRepository emailOutboxRepository;
+
+    @Autowired
+    private JavaMailSender javaMailSender;
+
+    @Autowired
+    private LeaseService leaseService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${spring.mail.username}")
+    private String fromEmail;
+
+    @Value("${app.mail.outbox.workers:2}")
+    private int workers;
+
+    @Value("${app.mail.outbox.batch-size:20}")
+    private int batchSize;
+
+    @Value("${app.mail.outbox.poll-interval:PT1S}")
+    private Duration pollInterval;
+
+    @Value("${app.mail.outbox.claim-timeout:PT2M}")
+    private Duration claimTimeout;
+
+    @Value("${app.mail.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${app.mail.outbox.initial-backoff:PT10S}")
+    private Duration initialBackoff;
+
+    @Value("${app.mail.outbox.max-backoff:PT30M}")
+    private Duration maxBackoff;
+
+    @Value("${app.mail.outbox.shutdown-timeout:PT10S}")
+    private Duration shutdownTimeout;
+
+    // Released when a message is queued on this node, so an idle worker sends it without waiting for the next poll
+    private final Semaphore wakeUps = new Semaphore(0);
+
+    private ExecutorService executor;
+
+    private volatile boolean running;
+
+    private Timer sendTimer;
+
+    private Counter sentCounter;
+
+    private Counter failureCounter;
+
+    private Counter deadLetterCounter;
+
+    private Counter expiredCounter;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("mail.outbox.depth", emailOutboxRepository, repository -> repository.countByStatus(EmailOutboxMessage.Status.PENDING))
+                .description("Emails waiting to be sent").register(meterRegistry);
+        Gauge.builder("mail.outbox.dead", emailOutboxRepository, repository -> repository.countByStatus(EmailOutboxMessage.Status.DEAD))
+                .description("Emails given up after the maximum number of attempts").register(meterRegistry);
+        this.sendTimer = Timer.builder("mail.send").description("Time to send one batch of emails over SMTP").register(meterRegistry);
+        this.sentCounter = Counter.builder("mail.sent").description("Emails sent").register(meterRegistry);
+        this.failureCounter = Counter.builder("mail.send.failures").description("Failed attempts to send an email").register(meterRegistry);
+        this.deadLetterCounter = Counter.builder("mail.dead_lettered").description("Emails given up on").register(meterRegistry);
+        this.expiredCounter = Counter.builder("mail.expired").description("Emails dropped unsent past their expiry").register(meterRegistry);
+
+        if (workers <= 0) {
+            return;
+        }
+        running = true;
+        executor = Executors.newFixedThreadPool(workers, new CustomizableThreadFactory("mail-outbox-"));
+        for (int i = 0; i < workers; i++) {
+            // Claims are per worker, so workers of the same node never send each other's messages
+            String owner = leaseService.getOwner() + "/" + i;
+            executor.execute(() -> work(owner));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (executor == null) {
+            return;
+        }
+        running = false;
+        wakeUps.release(workers);
+        executor.shutdown();
+        // Messages still claimed when time is up are sent by another node once their claim expires
+        if (!executor.awaitTermination(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Queue an email. Inside a transaction it is queued with it, and sent only once it commits.
+     */
+    public void enqueue(String to, String subject, String text) {
+        enqueue(to, subject, text, null);
+    }
+
+    /**
+     * Queue an email that is dropped instead of sent or retried after {@code validFor}, e.g. one carrying a code
+     * that expires by then.
+     */
+    public void enqueue(String to, String subject, String text, Duration validFor) {
+        EmailOutboxMessage message = new EmailOutboxMessage();
+        message.setRecipient(to);
+        message.setSubject(subject);
+        message.setBody(text);
+        if (validFor != null) {
+            message.setNotAfter(LocalDateTime.now().plus(validFor));
+        }
+        emailOutboxRepository.save(message);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            wakeUps.release();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                wakeUps.release();
+            }
+        });
+    }
+
+    private void work(String owner) {
+        while (running) {
+            int processed = 0;
+            try {
+                processed = sendBatch(owner);
+            } catch (DataAccessException e) {
+                log.warn("Email outbox worker {} failed to access the outbox: {}", owner, e.getMessage());
+            } catch (RuntimeException e) {
+                // E.g. no connection for a transaction; the worker must keep polling whatever fails
+                log.error("Email outbox worker {} failed: {}", owner, e.getMessage(), e);
+            }
+            if (processed < batchSize) {
+                try {
+                    // Wait for the next poll unless a message is queued meanwhile
+                    if (wakeUps.tryAcquire(pollInterval.toMillis(), TimeUnit.MILLISECONDS)) {
+                        wakeUps.drainPermits();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Claim and send one batch.
+     * @return The number of messages processed
+     */
+    private int sendBatch(String owner) {
+        // Messages claimed by an earlier, interrupted attempt are retried first
+        List<EmailOutboxMessage> batch = emailOutboxRepository.findClaimedBy(owner);
+        if (batch.isEmpty()) {
+            if (emailOutboxRepository.claim(owner, claimTimeout.toSeconds(), batchSize) == 0) {
+                return 0;
+            }
+            batch = emailOutboxRepository.findClaimedBy(owner);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> expired = new ArrayList<>();
+        Map<SimpleMailMessage, EmailOutboxMessage> byMail = new IdentityHashMap<>();
+        for (EmailOutboxMessage message : batch) {
+            if (message.getNotAfter() != null && message.getNotAfter().isBefore(now)) {
+                expired.add(message.getId());
+                continue;
+            }
+            SimpleMailMessage mail = new SimpleMailMessage();
+            mail.setFrom(fromEmail);
+            mail.setTo(message.getRecipient());
+            mail.setSubject(message.getSubject());
+            mail.setText(message.getBody());
+            byMail.put(mail, message);
+        }
+
+        if (!expired.isEmpty()) {
+            emailOutboxRepository.deleteAllByIdInBatch(expired);
+            expiredCounter.increment(expired.size());
+            log.info("Dropped {} expired emails unsent", expired.size());
+        }
+        if (byMail.isEmpty()) {
+            return batch.size();
+        }
+
+        // One connection for the whole batch; failures are reported per message
+        Map<Object, Exception> failures = new IdentityHashMap<>();
+        long start = System.nanoTime();
+        try {
+            javaMailSender.send(byMail.keySet().toArray(new SimpleMailMessage[0]));
+        } catch (MailSendException e) {
+            failures.putAll(e.getFailedMessages());
+            if (failures.isEmpty()) {
+                byMail.keySet().forEach(mail -> failures.put(mail, e));
+            }
+        } catch (MailException e) {
+            byMail.keySet().forEach(mail -> failures.put(mail, e));
+        } finally {
+            sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        List<Long> sent = new ArrayList<>();
+        byMail.forEach((mail, message) -> {
+            Exception failure = failures.get(mail);
+            if (failure == null) {
+                sent.add(message.getId());
+            } else {
+                recordFailure(owner, message, failure);
+            }
+        });
+        if (!sent.isEmpty()) {
+            emailOutboxRepository.deleteAllByIdInBatch(sent);
+            sentCounter.increment(sent.size());
+        }
+        return batch.size();
+    }
+
+    private void recordFailure(String owner, EmailOutboxMessage message, Exception failure) {
+        failureCounter.increment();
+        int attempts = message.getAttempts() + 1;
+        String error = failure.getMessage() != null ? failure.getMessage() : failure.getClass().getName();
+        if (error.length() > MAX_ERROR_LENGTH) {
+            error = error.substring(0, MAX_ERROR_LENGTH);
+        }
+        // initial-backoff, doubled after every failed attempt, capped at max-backoff
+        Duration delay = initialBackoff.multipliedBy(1L << Math.min(attempts - 1, 30));
+        if (delay.compareTo(maxBackoff) > 0) {
+            delay = maxBackoff;
+        }
+        // What it carries would be stale by the next attempt, so neither retry nor keep it
+        if (message.getNotAfter() != null && LocalDateTime.now().plus(delay).isAfter(message.getNotAfter())) {
+            emailOutboxRepository.deleteAllByIdInBatch(List.of(message.getId()));
+            expiredCounter.increment();
+            log.warn("Dropping email {} to {} after {} attempts, it expires before the next one: {}",
+                    message.getId(), message.getRecipient(), attempts, error);
+            return;
+        }
+        if (attempts >= maxAttempts) {
+            emailOutboxRepository.markFailed(message.getId(), owner, EmailOutboxMessage.Status.DEAD.name(), error, 0);
+            deadLetterCounter.increment();
+            log.error("Giving up on email {} to {} after {} attempts: {}", message.getId(), message.getRecipient(), attempts, error);
+            return;
+        }
+        emailOutboxRepository.markFailed(message.getId(), owner, EmailOutboxMessage.Status.PENDING.name(), error, delay.toSeconds());
+        log.warn("Failed to send email {} to {} (attempt {}), retrying in {}: {}", message.getId(), message.getRecipient(), attempts, delay, error);
+    }
+}
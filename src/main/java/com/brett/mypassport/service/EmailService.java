@@ -3,39 +3,34 @@ package com.brett.mypassport.service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+
 @Service
 public class EmailService {
 
     private static final Logger log = LoggerFactory.getLogger(EmailService.class);
 
     @Autowired
-    private JavaMailSender javaMailSender;
-
-    @Value("${spring.mail.username}")
-    private String fromEmail;
+    private EmailOutboxService emailOutboxService;
 
+    /**
+     * Queue the email in the outbox; it is sent in the background (see {@link EmailOutboxService}).
+     */
     public void sendSimpleMessage(String to, String subject, String text) {
-        log.info("Preparing to send email to: {}", to);
+        sendSimpleMessage(to, subject, text, null);
+    }
+
+    /**
+     * Queue the email in the outbox, to be dropped unsent if it is still there after {@code validFor}.
+     */
+    public void sendSimpleMessage(String to, String subject, String text, Duration validFor) {
+        log.info("Queueing email to: {}", to);
         log.info("Subject: {}", subject);
         log.info("Body: {}", text);
 
-        SimpleMailMessage message = new SimpleMailMessage();
-        message.setFrom(fromEmail);
-        message.setTo(to);
-        message.setSubject(subject);
-        message.setText(text);
-        try {
-            javaMailSender.send(message);
-            log.info("Email sent successfully to {}", to);
-        } catch (Exception e) {
-            log.error("Failed to send email to {}: {}", to, e.getMessage(), e);
-            // Rethrow so the caller knows it failed
-            throw e;
-        }
+        emailOutboxService.enqueue(to, subject, text, validFor);
+        log.info("Email queued for {}", to);
     }
 }
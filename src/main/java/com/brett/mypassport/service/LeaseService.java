@@ -0,0 +1,53 @@
+package com.brett.mypassport.service;
+
+import com.brett.mypassport.repository.SchedulerLeaseRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Cluster-wide mutual exclusion for background jobs, backed by the scheduler_leases table.
+ * <p>
+ * A lease is held until it expires or is released, so a node that dies while holding one blocks the job
+ * for at most the lease duration. Holders of long-running jobs extend the lease by acquiring it again.
+ */
+@Service
+public class LeaseService {
+
+    // Unique per process, so two instances on the same host never share a lease
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName() + ":" + UUID.randomUUID().toString().substring(0, 8);
+
+    @Autowired
+    private SchedulerLeaseRepository schedulerLeaseRepository;
+
+    /**
+     * Take or extend the lease.
+     * @return Whether this node holds the lease for the given duration from now
+     */
+    public boolean tryAcquire(String name, Duration duration) {
+        long seconds = Math.max(1, duration.toSeconds());
+        if (schedulerLeaseRepository.tryAcquire(name, owner, seconds) == 1) {
+            return true;
+        }
+        if (schedulerLeaseRepository.existsById(name)) {
+            return false;
+        }
+        // First use of the lease: create it, then race for it like for any expired lease
+        schedulerLeaseRepository.createIfAbsent(name);
+        return schedulerLeaseRepository.tryAcquire(name, owner, seconds) == 1;
+    }
+
+    /**
+     * Let other nodes take the lease right away. Does nothing if this node no longer holds it.
+     */
+    public void release(String name) {
+        schedulerLeaseRepository.release(name, owner);
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+}
@@ -0,0 +1,145 @@
+package com.brett.mypassport.service;
+
+import com.brett.mypassport.dto.PermissionCheckResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches check-permission decisions for valid tokens, so repeated checks of the same token, system and route are
+ * answered from memory.
+ * <p>
+ * Entries expire with their token. Every hit is re-validated against the things that can change a decision
+ * before then: the token's session must not be revoked ({@link TokenRevocationService}), nor every session of the
+ * user ({@link TokenEpochService}), and the user's authority version must still be the one read before the decision
+ * was computed ({@link AuthorityVersionService}). All are in-memory lookups. While the revocation set is not synced
+ * from Redis, hits are ignored. A decision computed with matchers older than that version is therefore never served;
+ * it is dropped on its next lookup, or evicted by expiry or size, rather than by scanning the cache when grants
+ * change.
+ * <p>
+ * Latency is published as the "permission.check" timer tagged cache=hit|miss, which also gives the hit ratio.
+ */
+@Service
+public class PermissionDecisionCacheService {
+
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
+    @Autowired
+    private AuthorityVersionService authorityVersionService;
+
+    @Autowired
+    private TokenEpochService tokenEpochService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.permission-check.decision-cache.max-size:100000}")
+    private long maxSize;
+
+    private Cache<DecisionKey, Decision> decisions;
+
+    private Timer hitTimer;
+
+    private Timer missTimer;
+
+    @PostConstruct
+    public void init() {
+        this.decisions = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<DecisionKey, Decision>() {
+                    @Override
+                    public long expireAfterCreate(DecisionKey key, Decision value, long currentTime) {
+                        long remainingMillis = value.expiresAtMillis() - System.currentTimeMillis();
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remainingMillis));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(DecisionKey key, Decision value, long currentTime,
+                                                  long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(DecisionKey key, Decision value, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, decisions, "permissionDecisions");
+        this.hitTimer = Timer.builder("permission.check").tag("cache", "hit")
+                .description("check-permission latency").register(meterRegistry);
+        this.missTimer = Timer.builder("permission.check").tag("cache", "miss")
+                .description("check-permission latency").register(meterRegistry);
+    }
+
+    /**
+     * @return A copy of the cached decision, or null if there is none or it may no longer hold
+     */
+    public PermissionCheckResponse get(DecisionKey key) {
+        Decision decision = decisions.getIfPresent(key);
+        if (decision == null) {
+            return null;
+        }
+        Integer currentVersion = authorityVersionService.getCurrentVersion(decision.username());
+        if (decision.expiresAtMillis() <= System.currentTimeMillis()
+                || !tokenRevocationService.isSynced()
+                || tokenRevocationService.isRevoked(decision.sessionId())
+                || tokenEpochService.isRevoked(decision.username(), decision.issuedAtSeconds())
+                || !Objects.equals(decision.authorityVersion(), currentVersion)) {
+            decisions.invalidate(key);
+            return null;
+        }
+        return new PermissionCheckResponse(true, decision.hasPermission(), decision.username(), decision.reason());
+    }
+
+    /**
+     * Cache the decision for a valid token.
+     * @param sessionId        The token's "sid" claim
+     * @param authorityVersion The user's authority version, read before the decision was computed
+     * @param issuedAtSeconds  The token's "iat" claim
+     * @param expiresAtMillis  The token's expiry
+     */
+    public void put(DecisionKey key, PermissionCheckResponse response, String sessionId, int authorityVersion,
+                    long issuedAtSeconds, long expiresAtMillis) {
+        decisions.put(key, new Decision(response.isHasPermission(), response.getUsername(), response.getReason(),
+                sessionId, authorityVersion, issuedAtSeconds, expiresAtMillis));
+    }
+
+    /**
+     * Drop every cached decision, e.g. to measure misses.
+     */
+    public void invalidateAll() {
+        decisions.invalidateAll();
+    }
+
+    public void recordHit(long nanos) {
+        hitTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordMiss(long nanos) {
+        missTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param tokenHash Hex SHA-256 digest of the token
+     */
+    public record DecisionKey(String tokenHash, String sysCode, String method, String path, String requiredPermission) {
+    }
+
+    private record Decision(boolean hasPermission, String username, String reason,
+                            String sessionId, Integer authorityVersion, long issuedAtSeconds, long expiresAtMillis) {
+    }
+}
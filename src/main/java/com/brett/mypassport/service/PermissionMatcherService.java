@@ -0,0 +1,98 @@
+package com.brett.mypassport.service;
+
+import com.brett.mypassport.common.PermissionMatcher;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches each user's compiled {@link PermissionMatcher} per sysCode, compiled from the user's permission snapshot
+ * (see {@link EffectivePermissionService}).
+ * <p>
+ * Each user's matchers are labelled with the authority version they were compiled for (see
+ * {@link AuthorityVersionService}) and recompiled once the current version differs, so matchers built from old
+ * grants are never served after a change. They are also evicted per user when the grants change, through the same
+ * notifications that invalidate the authority version, so old matchers do not linger.
+ */
+@Service
+public class PermissionMatcherService {
+
+    @Autowired
+    private AuthorityVersionService authorityVersionService;
+
+    @Autowired
+    private EffectivePermissionService effectivePermissionService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.security.permission-matcher-cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${app.security.permission-matcher-cache.ttl:PT10M}")
+    private Duration ttl;
+
+    // Username -> authority version and sysCode -> compiled matcher, so a grant change evicts every system at once
+    private Cache<String, UserMatchers> matchers;
+
+    @PostConstruct
+    public void init() {
+        this.matchers = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, matchers, "permissionMatchers");
+    }
+
+    /**
+     * @return The user's compiled permissions for the system, or null if the user does not exist
+     */
+    public PermissionMatcher getMatcher(String username, String sysCode) {
+        Integer version = authorityVersionService.getCurrentVersion(username);
+        if (version == null) {
+            return null;
+        }
+        UserMatchers cached = matchers.getIfPresent(username);
+        if (cached == null || cached.version() < version) {
+            // Versions only grow: a request that read an older version than the cached one uses the newer matchers
+            cached = matchers.asMap().compute(username, (k, current) -> current != null && current.version() >= version
+                    ? current : new UserMatchers(version, new ConcurrentHashMap<>()));
+        }
+        UserMatchers entry = cached;
+        // A null result (unknown user) is not stored
+        return entry.bySystem().computeIfAbsent(sysCode, k -> load(username, sysCode, entry.version()));
+    }
+
+    @EventListener
+    public void onAuthorityChanged(AuthorityChangedEvent event) {
+        matchers.invalidateAll(event.usernames());
+    }
+
+    private PermissionMatcher load(String username, String sysCode, int version) {
+        EffectivePermissionService.Snapshot snapshot = effectivePermissionService.getSnapshot(username, version);
+        if (snapshot == null) {
+            return null;
+        }
+        EffectivePermissionService.SystemGrants grants = snapshot.systems().get(sysCode);
+        return PermissionMatcher.compile(grants != null ? grants.scopedPermissions() : Set.of());
+    }
+
+    /**
+     * @param version   The authority version the matchers were compiled for
+     * @param bySystem  sysCode -> compiled matcher
+     */
+    private record UserMatchers(int version, Map<String, PermissionMatcher> bySystem) {
+    }
+}
@@ -9,8 +9,13 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.stream.Collectors;
+import com.brett.mypassport.common.KeysetCursor;
+import com.brett.mypassport.dto.SliceResponse;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
 
 @Service
 public class PermissionService {
@@ -32,6 +37,21 @@ public class PermissionService {
                 .map(this::mapToResponse);
     }
 
+    /**
+     * Retrieve permissions in keyset-paginated slices, without a total count.
+     * @param cursor The cursor returned with the previous slice, or null for the first slice
+     * @return Slice of permission responses
+     */
+    @Transactional(readOnly = true)
+    public SliceResponse<PermissionResponse> scrollPermissions(String sysCode, String cursor, int size) {
+        ScrollPosition position = KeysetCursor.decode(cursor);
+        Window<Permission> permissions = sysCode != null && !sysCode.isEmpty()
+                ? permissionRepository.findBySysCode(sysCode, position, Limit.of(size), KeysetCursor.ORDER)
+                : permissionRepository.findBy(position, Limit.of(size), KeysetCursor.ORDER);
+        return SliceResponse.of(permissions, this::mapToResponse,
+                permission -> KeysetCursor.encode(permission.getCreatedAt(), permission.getId()));
+    }
+
     /**
      * Helper method to map Permission entity to PermissionResponse DTO.
      */
@@ -0,0 +1,182 @@
+package com.brett.mypassport.service;
+
+import com.brett.mypassport.common.TokenHashUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Token-bucket rate limits for the unauthenticated endpoints that are expensive to call: login (password hashing),
+ * send-code and forgot-password (an email each).
+ * <p>
+ * Each endpoint has one bucket per client IP and one per email address, stored in Redis
+ * ("rate_limit:&lt;endpoint&gt;:ip:&lt;ip&gt;" and "rate_limit:&lt;endpoint&gt;:email:&lt;SHA-256 of the email&gt;")
+ * so the limits hold across nodes; hashing keeps the addresses, and the length of the keys, out of the client's
+ * hands. A bucket holds up to {@code per-ip} (or {@code per-email}) requests and refills at that many per
+ * {@code period}. Both buckets are checked and charged by one script using the Redis clock, so a request costs one
+ * round trip and is charged only if it is allowed. If Redis is unavailable requests are allowed.
+ * <p>
+ * Published metrics: the "rate_limit.requests" counter, tagged with the endpoint and outcome (allowed, rejected or
+ * error).
+ */
+@Service
+public class RateLimitService {
+
+    private static final Logger log = LoggerFactory.getLogger(RateLimitService.class);
+
+    private static final String KEY_PREFIX = "rate_limit:";
+
+    public static final String LOGIN = "login";
+    public static final String SEND_CODE = "send-code";
+    public static final String FORGOT_PASSWORD = "forgot-password";
+
+    // ARGV holds (capacity, period in ms) per key. Returns 0 and takes a token from every bucket if each holds one,
+    // otherwise the milliseconds until they all do, taking nothing
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>("""
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local tokens = {}
+            local wait = 0
+            for i, key in ipairs(KEYS) do
+                local capacity = tonumber(ARGV[2 * i - 1])
+                local period = tonumber(ARGV[2 * i])
+                local bucket = redis.call('HMGET', key, 'tokens', 'ts')
+                local available = capacity
+                if bucket[1] then
+                    local elapsed = math.max(now - tonumber(bucket[2]), 0)
+                    available = math.min(capacity, tonumber(bucket[1]) + elapsed * capacity / period)
+                end
+                if available < 1 then
+                    wait = math.max(wait, math.ceil((1 - available) * period / capacity))
+                end
+                tokens[i] = available
+            end
+            if wait > 0 then
+                return wait
+            end
+            for i, key in ipairs(KEYS) do
+                redis.call('HSET', key, 'tokens', tostring(tokens[i] - 1), 'ts', now)
+                redis.call('PEXPIRE', key, ARGV[2 * i])
+            end
+            return 0
+            """, Long.class);
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.rate-limit.login.per-ip:30}")
+    private int loginPerIp;
+
+    @Value("${app.rate-limit.login.per-email:10}")
+    private int loginPerEmail;
+
+    @Value("${app.rate-limit.login.period:PT1M}")
+    private Duration loginPeriod;
+
+    @Value("${app.rate-limit.send-code.per-ip:10}")
+    private int sendCodePerIp;
+
+    @Value("${app.rate-limit.send-code.per-email:3}")
+    private int sendCodePerEmail;
+
+    @Value("${app.rate-limit.send-code.period:PT10M}")
+    private Duration sendCodePeriod;
+
+    @Value("${app.rate-limit.forgot-password.per-ip:10}")
+    private int forgotPasswordPerIp;
+
+    @Value("${app.rate-limit.forgot-password.per-email:3}")
+    private int forgotPasswordPerEmail;
+
+    @Value("${app.rate-limit.forgot-password.period:PT10M}")
+    private Duration forgotPasswordPeriod;
+
+    /**
+     * Take one request from the endpoint's buckets of the client.
+     * @param endpoint One of {@link #LOGIN}, {@link #SEND_CODE} and {@link #FORGOT_PASSWORD}
+     * @param email    The email address the request is about, or null if it names none
+     * @return 0 if the request is allowed, otherwise the milliseconds until it would be
+     */
+    public long tryAcquire(String endpoint, String ip, String email) {
+        if (!enabled) {
+            return 0;
+        }
+        int perIp;
+        int perEmail;
+        Duration period;
+        switch (endpoint) {
+            case LOGIN -> {
+                perIp = loginPerIp;
+                perEmail = loginPerEmail;
+                period = loginPeriod;
+            }
+            case SEND_CODE -> {
+                perIp = sendCodePerIp;
+                perEmail = sendCodePerEmail;
+                period = sendCodePeriod;
+            }
+            case FORGOT_PASSWORD -> {
+                perIp = forgotPasswordPerIp;
+                perEmail = forgotPasswordPerEmail;
+                period = forgotPasswordPeriod;
+            }
+            default -> throw new IllegalArgumentException("Unknown rate-limited endpoint: " + endpoint);
+        }
+
+        String periodMillis = Long.toString(period.toMillis());
+        List<String> keys = new ArrayList<>(2);
+        List<String> args = new ArrayList<>(4);
+        keys.add(KEY_PREFIX + endpoint + ":ip:" + ip);
+        args.add(Integer.toString(perIp));
+        args.add(periodMillis);
+        if (email != null && !email.isBlank()) {
+            String normalized = email.trim().toLowerCase(Locale.ROOT);
+            keys.add(KEY_PREFIX + endpoint + ":email:" + TokenHashUtil.sha256Hex(normalized));
+            args.add(Integer.toString(perEmail));
+            args.add(periodMillis);
+        }
+
+        Long wait;
+        try {
+            wait = redisTemplate.execute(ACQUIRE_SCRIPT, keys, args.toArray());
+        } catch (DataAccessException e) {
+            count(endpoint, "error");
+            log.warn("Failed to check the {} rate limit of {}; allowing the request: {}", endpoint, ip, e.getMessage());
+            return 0;
+        }
+        if (wait == null || wait <= 0) {
+            count(endpoint, "allowed");
+            return 0;
+        }
+        count(endpoint, "rejected");
+        return wait;
+    }
+
+    private void count(String endpoint, String outcome) {
+        Counter.builder("rate_limit.requests")
+                .description("Requests checked against the rate limits")
+                .tag("endpoint", endpoint)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+}
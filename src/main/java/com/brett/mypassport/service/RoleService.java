@@ -14,8 +14,13 @@ import java.util.List;
 import java.util.stream.Collectors;
 import java.util.HashSet;
 import java.util.Set;
+import com.brett.mypassport.common.KeysetCursor;
+import com.brett.mypassport.dto.SliceResponse;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
 
 @Service
 public class RoleService {
@@ -26,6 +31,9 @@ public class RoleService {
     @Autowired
     private PermissionRepository permissionRepository;
 
+    @Autowired
+    private AuthorityVersionService authorityVersionService;
+
     /**
      * Create a new role.
      * @param request The role details
@@ -62,6 +70,11 @@ public class RoleService {
             throw new IllegalArgumentException("Role with name '" + request.getName() + "' already exists in system '" + request.getSysCode() + "'");
         }
 
+        // The role's name and system are part of every holder's authorities
+        if (!role.getName().equals(request.getName()) || !role.getSysCode().equals(request.getSysCode())) {
+            authorityVersionService.bumpRole(id);
+        }
+
         role.setName(request.getName());
         role.setDescription(request.getDescription());
         role.setSysCode(request.getSysCode());
@@ -81,6 +94,7 @@ public class RoleService {
         
         // TODO: In a more complex system, we should verify that this role is not currently 
         // bound to any active users before deleting, or decide on a cascading strategy.
+        authorityVersionService.bumpRole(id);
         roleRepository.delete(role);
     }
 
@@ -98,6 +112,20 @@ public class RoleService {
                 .map(this::mapToResponse);
     }
 
+    /**
+     * Retrieve roles in keyset-paginated slices, optionally filtered by sysCode, without a total count.
+     * @param cursor The cursor returned with the previous slice, or null for the first slice
+     * @return Slice of role responses
+     */
+    @Transactional(readOnly = true)
+    public SliceResponse<RoleResponse> scrollRoles(String sysCode, String cursor, int size) {
+        ScrollPosition position = KeysetCursor.decode(cursor);
+        Window<Role> roles = sysCode != null && !sysCode.isEmpty()
+                ? roleRepository.findBySysCode(sysCode, position, Limit.of(size), KeysetCursor.ORDER)
+                : roleRepository.findBy(position, Limit.of(size), KeysetCursor.ORDER);
+        return SliceResponse.of(roles, this::mapToResponse, role -> KeysetCursor.encode(role.getCreatedAt(), role.getId()));
+    }
+
     /**
      * Retrieve a specific role by ID.
      * @param id The role ID
@@ -132,6 +160,7 @@ public class RoleService {
         // This completely replaces any existing permissions with the new set
         role.setPermissions(permissions);
         roleRepository.save(role);
+        authorityVersionService.bumpRole(roleId);
     }
 
     /**
@@ -0,0 +1,359 @@
+package com.brett.mypassport.service;
+
+import com.brett.mypassport.entity.Token;
+import com.brett.mypassport.entity.User;
+import com.brett.mypassport.repository.TokenBatchRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional write-behind of new login sessions ({@code app.tokens.write-behind.enabled}), so a login does not wait
+ * for its insert into the tokens table.
+ * <p>
+ * A login appends its session to a Redis stream and returns; background writers on every node read the stream as
+ * one consumer group and insert the sessions in multi-row batches. Each node's writer has a thread of its own, so a
+ * slow insert never delays the other scheduled tasks, nor they the writer. Sessions are as durable as Redis is
+ * configured to be (AOF with {@code appendfsync always} for no loss). While queued, a session is also indexed by
+ * its token digests, so lookups that miss the table can find it and write it right away ({@link #writeNow}).
+ * Inserts skip sessions already stored, so a batch whose acknowledgement is lost, or that a node claims from a
+ * writer that died, is simply written again.
+ * <p>
+ * The queue is bounded: once it holds {@code capacity} sessions, logins insert synchronously again, which slows them
+ * down to the database's pace instead of letting the backlog grow. Logins also insert synchronously while Redis is
+ * unavailable. On shutdown the queue is flushed for up to {@code shutdown-timeout}.
+ * Published metrics: "tokens.write_behind.queue.depth", "tokens.write_behind.batch.size" and
+ * "tokens.write_behind.fallbacks" (logins inserted synchronously while enabled).
+ */
+@Service
+public class SessionWriteBehindService {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionWriteBehindService.class);
+
+    private static final String STREAM_KEY = "session_queue";
+    private static final String INDEX_KEY = "session_queue:index";
+    private static final String GROUP = "session-writers";
+    private static final String SESSION_FIELD = "session";
+
+    // Append ARGV[2] to the stream and index it by both token digests (ARGV[3], ARGV[4]), unless the stream already
+    // holds ARGV[1] entries
+    private static final RedisScript<Long> ENQUEUE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('XLEN', KEYS[1]) >= tonumber(ARGV[1]) then
+                return 0
+            end
+            redis.call('XADD', KEYS[1], '*', 'session', ARGV[2])
+            redis.call('HSET', KEYS[2], ARGV[3], ARGV[2], ARGV[4], ARGV[2])
+            return 1
+            """, Long.class);
+
+    @Autowired
+    private TokenBatchRepository tokenBatchRepository;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private LeaseService leaseService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.tokens.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.tokens.write-behind.capacity:100000}")
+    private long capacity;
+
+    @Value("${app.tokens.write-behind.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.tokens.write-behind.flush-interval:PT0.1S}")
+    private Duration flushInterval;
+
+    @Value("${app.tokens.write-behind.claim-after:PT30S}")
+    private Duration claimAfter;
+
+    @Value("${app.tokens.write-behind.shutdown-timeout:PT10S}")
+    private Duration shutdownTimeout;
+
+    private final AtomicLong queueDepth = new AtomicLong();
+
+    private DistributionSummary batchSizes;
+
+    private Counter fallbacks;
+
+    private volatile boolean groupCreated;
+
+    private volatile boolean failing;
+
+    private ScheduledExecutorService writer;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("tokens.write_behind.queue.depth", queueDepth, AtomicLong::get)
+                .description("Sessions queued for insertion into the tokens table").register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("tokens.write_behind.batch.size")
+                .description("Sessions inserted per batch").register(meterRegistry);
+        this.fallbacks = Counter.builder("tokens.write_behind.fallbacks")
+                .description("Logins that inserted their session synchronously because the queue was full or unavailable")
+                .register(meterRegistry);
+        if (enabled) {
+            writer = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("session-writer-"));
+            writer.scheduleWithFixedDelay(this::flush, flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Queue a new session for insertion.
+     * @return Whether the session was queued; if not (disabled, queue full or Redis unavailable) the caller must save it
+     */
+    public boolean enqueue(Token token) {
+        if (!enabled) {
+            return false;
+        }
+        if (token.getCreatedAt() == null) {
+            token.setCreatedAt(LocalDateTime.now());
+        }
+        try {
+            String session = objectMapper.writeValueAsString(QueuedSession.of(token));
+            Long queued = redisTemplate.execute(ENQUEUE_SCRIPT, List.of(STREAM_KEY, INDEX_KEY), Long.toString(capacity),
+                    session, hex(token.getTokenHash()), hex(token.getRefreshTokenHash()));
+            if (queued != null && queued == 1) {
+                return true;
+            }
+        } catch (DataAccessException | JsonProcessingException e) {
+            log.warn("Failed to queue a session; inserting it directly: {}", e.getMessage());
+        }
+        fallbacks.increment();
+        return false;
+    }
+
+    /**
+     * @param tokenHash Digest of the access or refresh token
+     * @return Whether the session is queued and not yet in the tokens table
+     */
+    public boolean isPending(byte[] tokenHash) {
+        if (!enabled) {
+            return false;
+        }
+        try {
+            return Boolean.TRUE.equals(redisTemplate.opsForHash().hasKey(INDEX_KEY, hex(tokenHash)));
+        } catch (DataAccessException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Insert a queued session into the tokens table now, within the caller's transaction if there is one.
+     * The queue entry is left for the writer, whose insert then skips it.
+     * @param tokenHash Digest of the access or refresh token
+     * @return Whether the session was queued
+     */
+    public boolean writeNow(byte[] tokenHash) {
+        if (!enabled) {
+            return false;
+        }
+        try {
+            Object session = redisTemplate.opsForHash().get(INDEX_KEY, hex(tokenHash));
+            if (session == null) {
+                return false;
+            }
+            tokenBatchRepository.insertIgnoreAll(List.of(objectMapper.readValue((String) session, QueuedSession.class).toToken()));
+            return true;
+        } catch (DataAccessException | JsonProcessingException e) {
+            log.warn("Failed to write a queued session: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            int written;
+            do {
+                written = writeBatch();
+            } while (written == batchSize);
+            if (failing) {
+                log.info("Session write-behind recovered");
+                failing = false;
+            }
+        } catch (RuntimeException e) {
+            // Unacknowledged sessions stay in the stream and are claimed again after claim-after. Nothing may escape:
+            // an exception would cancel the writer's schedule
+            if (!failing) {
+                log.warn("Session write-behind is failing; queued sessions are retried: {}", e.getMessage());
+                failing = true;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        long deadline = System.nanoTime() + shutdownTimeout.toNanos();
+        writer.shutdown();
+        writer.awaitTermination(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        try {
+            int written;
+            do {
+                written = writeBatch();
+            } while (written > 0 && System.nanoTime() < deadline);
+        } catch (DataAccessException | IllegalStateException e) {
+            log.warn("Failed to flush the session queue on shutdown; other nodes write the rest: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Insert one batch: entries left unacknowledged by a writer for longer than claim-after (e.g. because it died),
+     * or else new entries.
+     * @return The number of entries processed
+     */
+    private synchronized int writeBatch() {
+        createGroupIfAbsent();
+        StreamOperations<String, Object, Object> stream = redisTemplate.opsForStream();
+        String consumer = leaseService.getOwner();
+        List<MapRecord<String, Object, Object>> records = claimStale(stream, consumer);
+        if (records.isEmpty()) {
+            records = stream.read(Consumer.from(GROUP, consumer), StreamReadOptions.empty().count(batchSize),
+                    StreamOffset.create(STREAM_KEY, ReadOffset.lastConsumed()));
+        }
+        if (records == null || records.isEmpty()) {
+            queueDepth.set(0);
+            return 0;
+        }
+
+        List<Token> tokens = new ArrayList<>(records.size());
+        List<Object> indexFields = new ArrayList<>(records.size() * 2);
+        for (MapRecord<String, Object, Object> record : records) {
+            try {
+                Token token = objectMapper.readValue((String) record.getValue().get(SESSION_FIELD), QueuedSession.class).toToken();
+                tokens.add(token);
+                indexFields.add(hex(token.getTokenHash()));
+                indexFields.add(hex(token.getRefreshTokenHash()));
+            } catch (JsonProcessingException | IllegalArgumentException e) {
+                log.warn("Dropping malformed queued session {}: {}", record.getId(), e.getMessage());
+            }
+        }
+        tokenBatchRepository.insertIgnoreAll(tokens);
+        batchSizes.record(tokens.size());
+
+        RecordId[] ids = records.stream().map(MapRecord::getId).toArray(RecordId[]::new);
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                operations.opsForStream().acknowledge(STREAM_KEY, GROUP, ids);
+                operations.opsForStream().delete(STREAM_KEY, ids);
+                if (!indexFields.isEmpty()) {
+                    operations.opsForHash().delete(INDEX_KEY, indexFields.toArray());
+                }
+                return null;
+            }
+        });
+        Long depth = stream.size(STREAM_KEY);
+        queueDepth.set(depth != null ? depth : 0);
+        return records.size();
+    }
+
+    private List<MapRecord<String, Object, Object>> claimStale(StreamOperations<String, Object, Object> stream, String consumer) {
+        PendingMessages pending = stream.pending(STREAM_KEY, GROUP, Range.unbounded(), batchSize);
+        RecordId[] stale = pending.stream()
+                .filter(message -> message.getElapsedTimeSinceLastDelivery().compareTo(claimAfter) >= 0)
+                .map(PendingMessage::getId)
+                .toArray(RecordId[]::new);
+        return stale.length > 0 ? stream.claim(STREAM_KEY, GROUP, consumer, claimAfter, stale) : List.of();
+    }
+
+    private void createGroupIfAbsent() {
+        if (groupCreated) {
+            return;
+        }
+        try {
+            redisTemplate.opsForStream().createGroup(STREAM_KEY, ReadOffset.from("0"), GROUP);
+        } catch (DataAccessException e) {
+            String message = e.getMostSpecificCause().getMessage();
+            if (message == null || !message.contains("BUSYGROUP")) {
+                throw e;
+            }
+        }
+        groupCreated = true;
+    }
+
+    private static String hex(byte[] digest) {
+        return HexFormat.of().formatHex(digest);
+    }
+
+    /**
+     * A session as queued; digests are hex-encoded.
+     */
+    private record QueuedSession(Long userId, String tokenHash, String refreshTokenHash, String sessionId,
+                                 String familyId, Long parentId, String ipAddress, String deviceInfo,
+                                 LocalDateTime expiresAt, LocalDateTime refreshExpiresAt, LocalDateTime createdAt) {
+
+        static QueuedSession of(Token token) {
+            return new QueuedSession(token.getUser().getId(), hex(token.getTokenHash()), hex(token.getRefreshTokenHash()),
+                    token.getSessionId(), token.getFamilyId(), token.getParentId(), token.getIpAddress(), token.getDeviceInfo(),
+                    token.getExpiresAt(), token.getRefreshExpiresAt(), token.getCreatedAt());
+        }
+
+        Token toToken() {
+            User user = new User();
+            user.setId(userId);
+            Token token = new Token(user, HexFormat.of().parseHex(tokenHash), HexFormat.of().parseHex(refreshTokenHash),
+                    "BEARER", false, false);
+            token.setSessionId(sessionId);
+            token.setFamilyId(familyId);
+            token.setParentId(parentId);
+            token.setIpAddress(ipAddress);
+            token.setDeviceInfo(deviceInfo);
+            token.setExpiresAt(expiresAt);
+            token.setRefreshExpiresAt(refreshExpiresAt);
+            token.setCreatedAt(createdAt);
+            return token;
+        }
+    }
+}
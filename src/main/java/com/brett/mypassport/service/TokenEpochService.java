@@ -0,0 +1,178 @@
+package com.brett.mypassport.service;
+
+import com.brett.mypassport.entity.User;
+import com.brett.mypassport.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Tracks each user's "tokens valid after" epoch: tokens issued ("iat") before it are rejected, so revoking every
+ * session of a user is a single write however many sessions they have.
+ * <p>
+ * The epoch lives in {@code users.tokens_valid_after} (epoch seconds). It is copied to Redis
+ * ("tokens_valid_after:&lt;username&gt;") and cached on each node for a short time so validation stays in memory.
+ * The Redis copy only ever moves forward, so a reader storing a value it read before a bump cannot overwrite the bump.
+ * A bump updates Redis once its transaction has committed, or deletes the copy if that fails, and evicts the cached
+ * value locally and on every other node through a pub/sub channel; if the message is lost the cache TTL bounds how
+ * long a node keeps accepting the old tokens. Nodes load the later of the Redis copy and the database, so a copy left
+ * behind by a failed update can never bring revoked tokens back.
+ * <p>
+ * "iat" has second precision, so a token issued within the same second before a bump stays valid.
+ */
+@Service
+public class TokenEpochService {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenEpochService.class);
+
+    private static final String KEY_PREFIX = "tokens_valid_after:";
+    private static final String EPOCH_CHANNEL = "tokens_valid_after_changes";
+
+    // Store ARGV[1] unless the key already holds a later epoch; ARGV[2] is the TTL in seconds
+    private static final RedisScript<Long> RAISE_SCRIPT = new DefaultRedisScript<>("""
+            local current = tonumber(redis.call('GET', KEYS[1]))
+            local epoch = tonumber(ARGV[1])
+            if current ~= nil and current > epoch then
+                epoch = current
+            end
+            redis.call('SET', KEYS[1], epoch, 'EX', ARGV[2])
+            return epoch
+            """, Long.class);
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Value("${app.jwt.revocation.epoch-cache-ttl:PT30S}")
+    private Duration cacheTtl;
+
+    @Value("${app.jwt.revocation.epoch-cache-max-size:100000}")
+    private long cacheMaxSize;
+
+    @Value("${app.jwt.revocation.epoch-redis-ttl:P1D}")
+    private Duration redisTtl;
+
+    // Username -> epoch seconds; 0 for users that never revoked their sessions (or do not exist)
+    private Cache<String, Long> epochs;
+
+    @PostConstruct
+    public void init() {
+        this.epochs = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(cacheTtl)
+                .build();
+        try {
+            listenerContainer.addMessageListener(
+                    (message, pattern) -> epochs.invalidate(new String(message.getBody(), StandardCharsets.UTF_8)),
+                    new ChannelTopic(EPOCH_CHANNEL));
+        } catch (DataAccessException e) {
+            // The listener stays registered; it is subscribed when TokenRevocationService restarts the container
+            log.warn("Failed to subscribe to token epoch changes; relying on the epoch cache TTL until Redis is back: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return Epoch seconds before which the user's tokens are revoked, 0 if none are
+     */
+    public long getValidAfter(String username) {
+        return epochs.get(username, this::load);
+    }
+
+    /**
+     * @param issuedAtSeconds The token's "iat" claim
+     * @return Whether the token was issued before the user's sessions were last revoked
+     */
+    public boolean isRevoked(String username, long issuedAtSeconds) {
+        return issuedAtSeconds < getValidAfter(username);
+    }
+
+    /**
+     * Revoke every token issued to the user so far. Must be called inside a transaction that saves the user.
+     */
+    public void revokeAll(User user) {
+        long epoch = System.currentTimeMillis() / 1000;
+        user.setTokensValidAfter(epoch);
+        String username = user.getUsername();
+        // Publishing before the commit would let a concurrent read cache the old epoch again
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    raise(username, epoch);
+                } catch (DataAccessException e) {
+                    // The copy is only ever behind the database; nodes still load the later of both
+                    log.warn("Failed to store the token epoch of {}; deleting the Redis copy: {}", username, e.getMessage());
+                    try {
+                        redisTemplate.delete(KEY_PREFIX + username);
+                    } catch (DataAccessException deleteFailure) {
+                        log.warn("Failed to delete the token epoch of {} from Redis: {}", username, deleteFailure.getMessage());
+                    }
+                }
+                epochs.invalidate(username);
+                try {
+                    redisTemplate.convertAndSend(EPOCH_CHANNEL, username);
+                } catch (DataAccessException e) {
+                    log.warn("Failed to publish the token epoch of {}; other nodes pick it up within {}: {}",
+                            username, cacheTtl, e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * @return The later of the Redis copy and the database: a bump whose Redis update failed is only in the database,
+     *         and a concurrent save of the user loaded before a bump writes the older epoch back to the database
+     */
+    private long load(String username) {
+        long epoch = 0;
+        try {
+            String stored = redisTemplate.opsForValue().get(KEY_PREFIX + username);
+            if (stored != null) {
+                epoch = Long.parseLong(stored);
+            }
+        } catch (DataAccessException | NumberFormatException e) {
+            log.warn("Failed to read the token epoch of {}; reading it from the database: {}", username, e.getMessage());
+        }
+        long persisted = userRepository.findTokensValidAfterByUsername(username).orElse(0L);
+        if (persisted <= epoch) {
+            return epoch;
+        }
+        // Repair a missing or stale copy
+        try {
+            return raise(username, persisted);
+        } catch (DataAccessException e) {
+            return persisted;
+        }
+    }
+
+    /**
+     * @return The epoch now stored in Redis, which is later than the given one if a bump got there first
+     */
+    private long raise(String username, long epoch) {
+        Long stored = redisTemplate.execute(RAISE_SCRIPT, List.of(KEY_PREFIX + username),
+                Long.toString(epoch), Long.toString(redisTtl.toSeconds()));
+        return stored != null ? stored : epoch;
+    }
+}
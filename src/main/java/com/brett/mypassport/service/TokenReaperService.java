@@ -0,0 +1,246 @@
+package com.brett.mypassport.service;
+
+import com.brett.mypassport.common.JwtUtil;
+import com.brett.mypassport.entity.Token;
+import com.brett.mypassport.repository.TokenRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Deletes sessions from the tokens table once none of their tokens can still be valid, so the table and its
+ * indexes stop growing with every login and refresh.
+ * <p>
+ * Runs on one node at a time (see {@link LeaseService}), in small batches with a pause in between, each batch in
+ * its own short transaction. Runs are handed off to a thread of their own, so the pauses never hold up the other
+ * scheduled tasks, and a run still going when the next is due skips it. When archiving is enabled, each batch is
+ * first appended to a gzipped NDJSON file (one per run) for audit; a batch whose delete fails is archived again by
+ * the next run. Raw token strings are never archived. Deleted rows are counted by the "tokens.reaped" metric.
+ */
+@Service
+public class TokenReaperService {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenReaperService.class);
+
+    private static final String LEASE_NAME = "token-reaper";
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
+
+    @Autowired
+    private TokenRepository tokenRepository;
+
+    @Autowired
+    private LeaseService leaseService;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.tokens.reaper.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.tokens.reaper.grace-period:PT1H}")
+    private Duration gracePeriod;
+
+    @Value("${app.tokens.reaper.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.tokens.reaper.batch-pause:PT0.2S}")
+    private Duration batchPause;
+
+    @Value("${app.tokens.reaper.max-batches-per-run:200}")
+    private int maxBatchesPerRun;
+
+    @Value("${app.tokens.reaper.lease:PT5M}")
+    private Duration lease;
+
+    @Value("${app.tokens.reaper.archive.enabled:false}")
+    private boolean archiveEnabled;
+
+    @Value("${app.tokens.reaper.archive.dir:./archive/tokens}")
+    private Path archiveDir;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private ExecutorService executor;
+
+    private Counter reapedCounter;
+
+    @PostConstruct
+    public void init() {
+        this.reapedCounter = Counter.builder("tokens.reaped")
+                .description("Expired sessions deleted from the tokens table").register(meterRegistry);
+        this.executor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("token-reaper-"));
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // Interrupts the pause between batches, so a run stops after its current batch and releases the lease
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Scheduled(fixedDelayString = "${app.tokens.reaper.interval:PT10M}", initialDelayString = "${app.tokens.reaper.interval:PT10M}")
+    public void reap() {
+        if (!enabled || !running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    run();
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            running.set(false);
+        }
+    }
+
+    private void run() {
+        if (!leaseService.tryAcquire(LEASE_NAME, lease)) {
+            return;
+        }
+        try {
+            int reaped = reapExpiredSessions();
+            if (reaped > 0) {
+                log.info("Reaped {} expired sessions from the tokens table", reaped);
+            }
+        } catch (IOException e) {
+            // Nothing is deleted without being archived first
+            log.error("Token reaper stopped: failed to archive expired sessions to {}: {}", archiveDir, e.getMessage());
+        } catch (RuntimeException e) {
+            log.error("Token reaper failed; retrying at the next run: {}", e.getMessage(), e);
+        } finally {
+            leaseService.release(LEASE_NAME);
+        }
+    }
+
+    /**
+     * Delete up to {@code max-batches-per-run} batches of expired sessions, stopping early if the lease is lost.
+     * @return The number of sessions deleted
+     */
+    public int reapExpiredSessions() throws IOException {
+        // No token issued before the cutoff can still be valid, whatever its type
+        LocalDateTime cutoff = LocalDateTime.now().minus(Duration.ofMillis(jwtUtil.getMaxTokenLifetime())).minus(gracePeriod);
+        int total = 0;
+        try (Archive archive = new Archive()) {
+            for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+                List<Long> ids = tokenRepository.findIdsCreatedBefore(cutoff, Limit.of(batchSize));
+                if (ids.isEmpty()) {
+                    break;
+                }
+                if (archiveEnabled) {
+                    archive.append(tokenRepository.findAllById(ids));
+                }
+                tokenRepository.deleteAllByIdInBatch(ids);
+                total += ids.size();
+                reapedCounter.increment(ids.size());
+                if (ids.size() < batchSize || !leaseService.tryAcquire(LEASE_NAME, lease) || !pause()) {
+                    break;
+                }
+            }
+        }
+        return total;
+    }
+
+    // Leave room for other transactions between batches
+    private boolean pause() {
+        try {
+            Thread.sleep(batchPause.toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private Map<String, Object> toArchiveRecord(Token token) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("id", token.getId());
+        // Reading the ID of a lazy association does not load the user
+        record.put("userId", token.getUser() != null ? token.getUser().getId() : null);
+        record.put("sessionId", token.getSessionId());
+        record.put("familyId", token.getFamilyId());
+        record.put("parentId", token.getParentId());
+        record.put("tokenType", token.getTokenType());
+        record.put("tokenHash", token.getTokenHash() != null ? HexFormat.of().formatHex(token.getTokenHash()) : null);
+        record.put("ipAddress", token.getIpAddress());
+        record.put("deviceInfo", token.getDeviceInfo());
+        record.put("revoked", token.isRevoked());
+        record.put("expired", token.isExpired());
+        record.put("createdAt", token.getCreatedAt());
+        record.put("updatedAt", token.getUpdatedAt());
+        return record;
+    }
+
+    /**
+     * The archive file of one run, created on the first append. Every append is flushed to the file before
+     * the batch is deleted.
+     */
+    private final class Archive implements Closeable {
+
+        private Writer writer;
+
+        void append(List<Token> tokens) throws IOException {
+            if (writer == null) {
+                Files.createDirectories(archiveDir);
+                String owner = leaseService.getOwner().replaceAll("[^A-Za-z0-9.-]", "_");
+                Path file = archiveDir.resolve("tokens-" + LocalDateTime.now().format(FILE_TIMESTAMP) + "-" + owner + ".ndjson.gz");
+                OutputStream out = Files.newOutputStream(file, StandardOpenOption.CREATE_NEW);
+                writer = new OutputStreamWriter(new GZIPOutputStream(out, true), StandardCharsets.UTF_8);
+            }
+            for (Token token : tokens) {
+                writer.write(objectMapper.writeValueAsString(toArchiveRecord(token)));
+                writer.write('\n');
+            }
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+}
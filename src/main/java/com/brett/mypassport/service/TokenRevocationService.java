@@ -0,0 +1,191 @@
+package com.brett.mypassport.service;
+
+import com.brett.mypassport.common.BloomFilter;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks revoked sessions (the "sid" claim) so token validation needs no database access.
+ * <p>
+ * Each node keeps a Bloom filter in front of an exact map of session ID to expiry, so the common case - a session
+ * that was never revoked - is answered from the filter alone. Entries are dropped once every token of the session
+ * has expired. Revocations are shared through a Redis sorted set (score = expiry) and announced on a pub/sub
+ * channel; the sorted set is re-read periodically to catch messages missed while disconnected.
+ * <p>
+ * A revocation made inside a transaction takes effect once it commits, so a rolled-back revocation leaves no trace.
+ * Revocations are kept locally even if Redis cannot be reached; other nodes then fall back to the token registry
+ * as soon as their own sync with Redis fails (see {@link #isSynced()}).
+ */
+@Service
+public class TokenRevocationService {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenRevocationService.class);
+
+    private static final String REVOKED_SESSIONS_KEY = "revoked_sessions";
+    private static final String REVOCATION_CHANNEL = "session_revocations";
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Value("${app.jwt.revocation.expected-entries:100000}")
+    private int expectedEntries;
+
+    @Value("${app.jwt.revocation.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    // Session ID -> epoch millis after which no token of the session is valid anyway
+    private final Map<String, Long> revokedSessions = new ConcurrentHashMap<>();
+
+    private volatile BloomFilter filter;
+
+    private int filterCapacity;
+
+    private volatile boolean synced;
+
+    @PostConstruct
+    public void init() {
+        this.filter = new BloomFilter(expectedEntries, falsePositiveRate);
+        this.filterCapacity = expectedEntries;
+        listenerContainer.addMessageListener(
+                (message, pattern) -> onRevocationMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(REVOCATION_CHANNEL));
+        sync();
+    }
+
+    /**
+     * Revoke every token carrying the given session ID on all nodes, once the current transaction (if any) commits.
+     * @param sessionId       The "sid" claim; null (tokens issued before sessions existed) is ignored
+     * @param expiresAtMillis When the last token of the session expires; the entry is kept until then
+     */
+    public void revokeSession(String sessionId, long expiresAtMillis) {
+        if (sessionId == null) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            revokeSessionNow(sessionId, expiresAtMillis);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                revokeSessionNow(sessionId, expiresAtMillis);
+            }
+        });
+    }
+
+    /**
+     * Like {@link #revokeSession}, but right away, for sessions whose revocation was committed in a transaction of
+     * its own while the current one may still roll back.
+     */
+    public void revokeSessionNow(String sessionId, long expiresAtMillis) {
+        if (sessionId == null) {
+            return;
+        }
+        addLocal(sessionId, expiresAtMillis);
+        try {
+            redisTemplate.opsForZSet().add(REVOKED_SESSIONS_KEY, sessionId, expiresAtMillis);
+            redisTemplate.convertAndSend(REVOCATION_CHANNEL, sessionId + ":" + expiresAtMillis);
+        } catch (DataAccessException e) {
+            // The revocation is in the token registry, which nodes read while they cannot sync with Redis
+            log.warn("Failed to share the revocation of session {} through Redis: {}", sessionId, e.getMessage());
+        }
+    }
+
+    public boolean isRevoked(String sessionId) {
+        if (!filter.mightContain(sessionId)) {
+            return false;
+        }
+        Long expiresAt = revokedSessions.get(sessionId);
+        return expiresAt != null && expiresAt > System.currentTimeMillis();
+    }
+
+    /**
+     * @return Whether the revocation set has been loaded from Redis and the last refresh succeeded.
+     * Until then callers should fall back to the token registry.
+     */
+    public boolean isSynced() {
+        return synced;
+    }
+
+    /**
+     * Reload revocations from Redis and drop the ones whose sessions have expired.
+     */
+    @Scheduled(fixedDelayString = "${app.jwt.revocation.sync-interval:PT1M}", initialDelayString = "${app.jwt.revocation.sync-interval:PT1M}")
+    public void sync() {
+        long now = System.currentTimeMillis();
+        try {
+            // Subscribe before reading the set, so no revocation published in between is missed
+            if (!listenerContainer.isListening()) {
+                listenerContainer.stop();
+                listenerContainer.start();
+            }
+            redisTemplate.opsForZSet().removeRangeByScore(REVOKED_SESSIONS_KEY, Double.NEGATIVE_INFINITY, now);
+            Set<ZSetOperations.TypedTuple<String>> entries = redisTemplate.opsForZSet()
+                    .rangeByScoreWithScores(REVOKED_SESSIONS_KEY, now, Double.POSITIVE_INFINITY);
+            if (entries != null) {
+                for (ZSetOperations.TypedTuple<String> entry : entries) {
+                    if (entry.getValue() != null && entry.getScore() != null) {
+                        addLocal(entry.getValue(), entry.getScore().longValue());
+                    }
+                }
+            }
+            synced = true;
+        } catch (DataAccessException e) {
+            synced = false;
+            log.warn("Failed to load session revocations from Redis; falling back to the token registry: {}", e.getMessage());
+        }
+        purgeExpired(now);
+    }
+
+    private void onRevocationMessage(String body) {
+        int separator = body.lastIndexOf(':');
+        if (separator <= 0) {
+            log.warn("Ignoring malformed revocation message: {}", body);
+            return;
+        }
+        try {
+            addLocal(body.substring(0, separator), Long.parseLong(body.substring(separator + 1)));
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring malformed revocation message: {}", body);
+        }
+    }
+
+    // Writers are serialized so a filter rebuild never misses a concurrent revocation; readers take no lock
+    private synchronized void addLocal(String sessionId, long expiresAtMillis) {
+        revokedSessions.merge(sessionId, expiresAtMillis, Math::max);
+        filter.add(sessionId);
+    }
+
+    private synchronized void purgeExpired(long now) {
+        boolean removed = revokedSessions.values().removeIf(expiresAt -> expiresAt <= now);
+        if (!removed && revokedSessions.size() <= filterCapacity) {
+            return;
+        }
+        // Bloom filters cannot delete, so rebuild without the expired sessions (and resize if it has outgrown its capacity)
+        int capacity = Math.max(expectedEntries, revokedSessions.size() * 2);
+        BloomFilter rebuilt = new BloomFilter(capacity, falsePositiveRate);
+        revokedSessions.keySet().forEach(rebuilt::add);
+        this.filter = rebuilt;
+        this.filterCapacity = capacity;
+    }
+}
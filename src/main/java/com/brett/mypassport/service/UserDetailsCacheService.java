@@ -0,0 +1,174 @@
+package com.brett.mypassport.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of the {@link UserDetails} built by {@code UserService#loadUserByUsername}, keyed by username.
+ * <p>
+ * Entries are evicted per user when that user's password or grants change, on this node once the transaction has
+ * committed and on every other node through a Redis pub/sub channel; the TTL bounds staleness if a message is lost.
+ * Each entry also records the authority version it was built for and is reloaded once the user's current version
+ * differs, so a load racing a grant change cannot keep serving the old grants.
+ * Hit, miss and eviction counts are published as the "userDetails" cache metrics.
+ */
+@Service
+public class UserDetailsCacheService {
+
+    private static final Logger log = LoggerFactory.getLogger(UserDetailsCacheService.class);
+
+    private static final String EVICTION_CHANNEL = "user_details_evictions";
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private AuthorityVersionService authorityVersionService;
+
+    @Value("${app.security.user-cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${app.security.user-cache.ttl:PT10M}")
+    private Duration ttl;
+
+    private Cache<String, UserDetails> users;
+
+    @PostConstruct
+    public void init() {
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "userDetails");
+        try {
+            listenerContainer.addMessageListener(
+                    (message, pattern) -> users.invalidate(new String(message.getBody(), StandardCharsets.UTF_8)),
+                    new ChannelTopic(EVICTION_CHANNEL));
+        } catch (DataAccessException e) {
+            // The listener stays registered; it is subscribed when TokenRevocationService restarts the container
+            log.warn("Failed to subscribe to user cache evictions; relying on the cache TTL until Redis is back: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return The cached user details, loading and caching them on a miss.
+     * Exceptions thrown by the loader (e.g. for an unknown user) propagate and nothing is cached.
+     */
+    public UserDetails get(String username, Function<String, UserDetails> loader) {
+        UserDetails cached = users.get(username, loader);
+        if (cached instanceof CachedUserDetails details
+                && !Objects.equals(details.authorityVersion, authorityVersionService.getCurrentVersion(username))) {
+            // Built from other grants than the current ones
+            users.asMap().remove(username, cached);
+            return users.get(username, loader);
+        }
+        return cached;
+    }
+
+    /**
+     * Grant changes are announced to every node by {@link AuthorityVersionService}, so they are evicted locally only.
+     */
+    @EventListener
+    public void onAuthorityChanged(AuthorityChangedEvent event) {
+        users.invalidateAll(event.usernames());
+    }
+
+    /**
+     * Evict the users on every node once the current transaction commits (immediately outside a transaction).
+     * Evicting before the commit would let a concurrent request cache the old state again.
+     */
+    public void evictAfterCommit(String... usernames) {
+        List<String> evicted = List.of(usernames);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evict(evicted);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                evict(evicted);
+            }
+        });
+    }
+
+    private void evict(List<String> usernames) {
+        users.invalidateAll(usernames);
+        try {
+            usernames.forEach(username -> redisTemplate.convertAndSend(EVICTION_CHANNEL, username));
+        } catch (DataAccessException e) {
+            log.warn("Failed to publish user cache evictions; other nodes pick them up within {}: {}", ttl, e.getMessage());
+        }
+    }
+
+    /**
+     * Immutable user details. Spring's {@code User} erases its password when an authentication completes,
+     * which would corrupt a shared cached instance.
+     */
+    static final class CachedUserDetails implements UserDetails {
+
+        private final String username;
+        private final String password;
+        private final List<GrantedAuthority> authorities;
+        // The authority version the authorities were read for
+        private final Integer authorityVersion;
+
+        CachedUserDetails(String username, String password, Collection<? extends GrantedAuthority> authorities,
+                          Integer authorityVersion) {
+            this.username = username;
+            this.password = password;
+            this.authorities = List.copyOf(authorities);
+            this.authorityVersion = authorityVersion;
+        }
+
+        @Override
+        public String getUsername() {
+            return username;
+        }
+
+        @Override
+        public String getPassword() {
+            return password;
+        }
+
+        @Override
+        public List<GrantedAuthority> getAuthorities() {
+            return authorities;
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + " [Username=" + username + ", Granted Authorities=" + authorities + "]";
+        }
+    }
+}
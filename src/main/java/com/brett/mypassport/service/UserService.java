@@ -2,24 +2,33 @@ package com.brett.mypassport.service;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.io.File;
 import java.io.IOException;
 import java.util.UUID;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Window;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.beans.factory.annotation.Value;
+import com.brett.mypassport.config.BoundedPasswordEncoder;
 import com.brett.mypassport.dto.LoginRequest;
 import com.brett.mypassport.dto.LoginResponse;
 import com.brett.mypassport.dto.LoginResponse;
 import com.brett.mypassport.dto.RefreshTokenRequest;
 import com.brett.mypassport.dto.RegisterRequest;
 import com.brett.mypassport.dto.ResetPasswordRequest;
+import com.brett.mypassport.dto.SliceResponse;
 import com.brett.mypassport.dto.UserResponse;
 import com.brett.mypassport.entity.Token;
 import com.brett.mypassport.entity.User;
 import com.brett.mypassport.entity.Role;
+import com.brett.mypassport.common.JwtClaims;
 import com.brett.mypassport.common.JwtUtil;
+import com.brett.mypassport.common.KeysetCursor;
+import com.brett.mypassport.common.PermissionMatcher;
+import com.brett.mypassport.common.TokenHashUtil;
 import com.brett.mypassport.repository.TokenRepository;
 import com.brett.mypassport.repository.UserRepository;
 import com.brett.mypassport.repository.RoleRepository;
@@ -32,11 +41,19 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
 import java.util.Set;
-import org.springframework.util.AntPathMatcher;
+import com.brett.mypassport.dto.BatchPermissionCheckRequest;
+import com.brett.mypassport.dto.PermissionCheck;
 import com.brett.mypassport.dto.PermissionCheckRequest;
 import com.brett.mypassport.dto.PermissionCheckResponse;
 
@@ -61,6 +78,36 @@ public class UserService implements UserDetailsService {
     @Autowired
     private RoleRepository roleRepository;
 
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
+    @Autowired
+    private TokenEpochService tokenEpochService;
+
+    @Autowired
+    private SessionWriteBehindService sessionWriteBehindService;
+
+    @Autowired
+    private AuthorityVersionService authorityVersionService;
+
+    @Autowired
+    private UserDetailsCacheService userDetailsCacheService;
+
+    @Autowired
+    private PermissionMatcherService permissionMatcherService;
+
+    @Autowired
+    private EffectivePermissionService effectivePermissionService;
+
+    @Autowired
+    private PermissionDecisionCacheService permissionDecisionCacheService;
+
+    @Value("${app.permission-check.batch-parallel-threshold:256}")
+    private int batchParallelThreshold;
+
+    @Value("${app.jwt.refresh.reuse-grace-period:PT5S}")
+    private Duration refreshReuseGracePeriod;
+
     @Value("${app.upload.avatar-path}")
     private String avatarPath;
 
@@ -77,14 +124,18 @@ public class UserService implements UserDetailsService {
             throw new IllegalArgumentException("Invalid email or password.");
         }
 
-        // 3. Generate Tokens
-        String jwtToken = jwtUtil.generateToken(user.getUsername());
-        String refreshToken = jwtUtil.generateRefreshToken(user.getUsername());
+        // 3. Re-hash a password stored with outdated parameters while the raw password is at hand
+        rehashIfOutdated(user, request.getPassword());
 
-        // 4. Save Token
-        saveUserToken(user, jwtToken, refreshToken, ipAddress, deviceInfo);
+        // 4. Generate Tokens (both carry the same session ID)
+        String sessionId = jwtUtil.newSessionId();
+        String jwtToken = generateAccessToken(user, sessionId);
+        String refreshToken = jwtUtil.generateRefreshToken(user.getUsername(), sessionId);
 
-        // 5. Return Response
+        // 5. Save Token
+        saveUserToken(user, jwtToken, refreshToken, sessionId, ipAddress, deviceInfo, null);
+
+        // 6. Return Response
         return new LoginResponse(
                 user.getUsername(),
                 user.getEmail(),
@@ -94,32 +145,120 @@ public class UserService implements UserDetailsService {
                 jwtUtil.getRefreshTokenExpirationTime());
     }
 
-    private void saveUserToken(User user, String jwtToken, String refreshToken, String ipAddress, String deviceInfo) {
+    /**
+     * Store the password with the current encoder and parameters if its hash uses older ones (see
+     * {@code PasswordEncoderConfig}). The hash is only replaced if it is still the one checked, so a concurrent
+     * password change wins.
+     */
+    private void rehashIfOutdated(User user, String rawPassword) {
+        if (!passwordEncoder.upgradeEncoding(user.getPassword())) {
+            return;
+        }
+        String hash;
+        try {
+            hash = passwordEncoder.encode(rawPassword);
+        } catch (BoundedPasswordEncoder.SaturatedException e) {
+            // The login itself succeeded; the password is re-hashed on a later one
+            return;
+        }
+        if (userRepository.updatePasswordIfUnchanged(user.getId(), user.getPassword(), hash) > 0) {
+            userDetailsCacheService.evictAfterCommit(user.getUsername());
+        }
+    }
+
+    /**
+     * Generate an access token, embedding the user's grants from their permission snapshot when authority claims
+     * are enabled. The token carries the snapshot's version, so it is refreshed once the grants change.
+     */
+    private String generateAccessToken(User user, String sessionId) {
+        if (!jwtUtil.isAuthorityClaimsEnabled()) {
+            return jwtUtil.generateToken(user.getUsername(), sessionId);
+        }
+        EffectivePermissionService.Snapshot snapshot =
+                effectivePermissionService.getSnapshot(user.getUsername(), user.getAuthorityVersion());
+        if (snapshot == null) {
+            throw new IllegalArgumentException("User not found");
+        }
+        Map<String, Map<String, List<String>>> authorities = new TreeMap<>();
+        snapshot.systems().forEach((sysCode, grants) -> {
+            Map<String, List<String>> claims = new TreeMap<>();
+            claims.put(JwtUtil.ROLES_KEY, new ArrayList<>(grants.roles()));
+            if (!grants.permissions().isEmpty()) {
+                claims.put(JwtUtil.PERMISSIONS_KEY, new ArrayList<>(grants.permissions()));
+            }
+            authorities.put(sysCode, claims);
+        });
+        return jwtUtil.generateToken(user.getUsername(), sessionId, authorities, snapshot.version());
+    }
+
+    /**
+     * @param parent The row whose refresh token was exchanged for these tokens, or null for a login
+     */
+    private void saveUserToken(User user, String jwtToken, String refreshToken, String sessionId, String ipAddress, String deviceInfo,
+                               Token parent) {
         // Notice: Previously this method revoked old tokens from the same device (User-Agent).
         // That logic has been removed to allow multiple active logins from the same browser.
 
         // 3. Save new token
         Token token = new Token();
         token.setUser(user);
-        token.setToken(jwtToken);
-        token.setRefreshToken(refreshToken);
+        token.setTokenHash(TokenHashUtil.sha256(jwtToken));
+        token.setRefreshTokenHash(TokenHashUtil.sha256(refreshToken));
+        token.setSessionId(sessionId);
+        // A login starts a rotation family named after its session; rotated tokens inherit it
+        token.setFamilyId(parent != null && parent.getFamilyId() != null ? parent.getFamilyId() : sessionId);
+        token.setParentId(parent != null ? parent.getId() : null);
         token.setTokenType("BEARER");
         token.setExpired(false);
         token.setRevoked(false);
+        // Both tokens were issued just now; storing their expiry lets validity be checked without parsing them
+        LocalDateTime now = LocalDateTime.now();
+        token.setExpiresAt(now.plus(Duration.ofMillis(jwtUtil.getExpirationTime())));
+        token.setRefreshExpiresAt(now.plus(Duration.ofMillis(jwtUtil.getRefreshTokenExpirationTime())));
         token.setIpAddress(ipAddress);
         token.setDeviceInfo(deviceInfo);
+        // Logins may be written behind; a rotation is saved right away so reuse detection sees it
+        if (parent == null && sessionWriteBehindService.enqueue(token)) {
+            return;
+        }
         tokenRepository.save(token);
     }
 
-    @Transactional
-    public void registerUser(RegisterRequest request) {
-        // 1. Verify code
-        boolean isVerified = verificationService.verifyCode(request.getEmail(), request.getVerificationCode());
-        if (!isVerified) {
-            throw new IllegalArgumentException("Invalid or expired verification code.");
+    /**
+     * Find a session by the digest of its access token, writing it to the table first if it is still queued
+     * (see {@link SessionWriteBehindService}).
+     */
+    private Optional<Token> findByTokenHash(byte[] tokenHash) {
+        Optional<Token> token = tokenRepository.findByTokenHash(tokenHash);
+        if (token.isEmpty() && sessionWriteBehindService.writeNow(tokenHash)) {
+            return tokenRepository.findByTokenHash(tokenHash);
+        }
+        return token;
+    }
+
+    /**
+     * Refresh token counterpart of {@link #findByTokenHash}.
+     */
+    private Optional<Token> findByRefreshTokenHash(byte[] refreshTokenHash) {
+        Optional<Token> token = tokenRepository.findByRefreshTokenHash(refreshTokenHash);
+        if (token.isEmpty() && sessionWriteBehindService.writeNow(refreshTokenHash)) {
+            return tokenRepository.findByRefreshTokenHash(refreshTokenHash);
         }
+        return token;
+    }
+
+    /**
+     * Publish the revocation of a session once the transaction commits, so validation on every node rejects it
+     * without a DB lookup. Every token of the session was issued before now, so none outlives now + the longest
+     * token lifetime.
+     */
+    private void revokeSession(String sessionId) {
+        tokenRevocationService.revokeSession(sessionId, System.currentTimeMillis() + jwtUtil.getMaxTokenLifetime());
+    }
 
-        // 2. Check if user already exists
+    @Transactional
+    public void registerUser(RegisterRequest request) {
+        // 1. Check if user already exists
         if (userRepository.existsByEmail(request.getEmail())) {
             throw new IllegalArgumentException("Email is already registered.");
         }
@@ -127,24 +266,42 @@ public class UserService implements UserDetailsService {
             throw new IllegalArgumentException("Username is already taken.");
         }
 
-        // 3. Create and save user
+        // 2. Hash the password first: if the hashing pool is saturated the request fails with the code still usable
+        String encodedPassword = passwordEncoder.encode(request.getPassword());
+
+        // 3. Verify and consume the code, so it cannot be used to register twice
+        verificationService.consumeCode(request.getEmail(), request.getVerificationCode());
+
+        // 4. Create and save user
         User user = new User();
         user.setUsername(request.getUsername());
         user.setEmail(request.getEmail());
-        user.setPassword(passwordEncoder.encode(request.getPassword()));
+        user.setPassword(encodedPassword);
 
         userRepository.save(user);
     }
 
+    @Transactional
     public LoginResponse refreshToken(RefreshTokenRequest request) {
         String requestRefreshToken = request.getRefreshToken();
 
         // 1. Find token in DB
-        Token token = tokenRepository.findByRefreshToken(requestRefreshToken)
+        Token token = findByRefreshTokenHash(TokenHashUtil.sha256(requestRefreshToken))
                 .orElseThrow(() -> new IllegalArgumentException("Refresh token not found"));
 
-        // 2. Check if revoked or expired in DB
+        // 2. Check if revoked or expired in DB. A refresh token that was already rotated is being replayed, possibly
+        // by whoever stole it, so every session descending from the same login is revoked. Within the grace period
+        // after the rotation it is more likely a duplicate submit by the client that rotated it, which is only rejected
         if (token.isRevoked() || token.isExpired()) {
+            LocalDateTime rotatedAt = token.getFamilyId() != null
+                    ? tokenRepository.findRotatedAtByParentId(token.getId()) : null;
+            if (rotatedAt != null && rotatedAt.isBefore(LocalDateTime.now().minus(refreshReuseGracePeriod))) {
+                revokeFamily(token.getFamilyId());
+                throw new IllegalArgumentException("Refresh token reuse detected");
+            }
+            throw new IllegalArgumentException("Refresh token is expired or revoked");
+        }
+        if (token.getRefreshExpiresAt() != null && !token.getRefreshExpiresAt().isAfter(LocalDateTime.now())) {
             throw new IllegalArgumentException("Refresh token is expired or revoked");
         }
 
@@ -153,19 +310,26 @@ public class UserService implements UserDetailsService {
         if (!jwtUtil.validateToken(requestRefreshToken, username)) {
             throw new IllegalArgumentException("Invalid refresh token");
         }
+        // A login still queued for write-behind when all sessions were revoked missed the revoking update
+        if (tokenEpochService.isRevoked(username, jwtUtil.parseToken(requestRefreshToken).getIssuedAt().getTime() / 1000)) {
+            throw new IllegalArgumentException("Refresh token is expired or revoked");
+        }
 
-        // 4. Revoke old token
-        token.setRevoked(true);
-        token.setExpired(true);
-        tokenRepository.save(token);
+        // 4. Revoke old token. Only one of several concurrent refreshes with the same token gets to revoke it; the
+        // others are rejected, and so are those that read the token after it was rotated (within the grace period)
+        if (tokenRepository.revokeById(token.getId(), LocalDateTime.now()) == 0) {
+            throw new IllegalArgumentException("Refresh token is expired or revoked");
+        }
+        revokeSession(token.getSessionId());
 
-        // 5. Generate new tokens
+        // 5. Generate new tokens under a new session
         User user = token.getUser();
-        String newJwtToken = jwtUtil.generateToken(user.getUsername());
-        String newRefreshToken = jwtUtil.generateRefreshToken(user.getUsername());
+        String sessionId = jwtUtil.newSessionId();
+        String newJwtToken = generateAccessToken(user, sessionId);
+        String newRefreshToken = jwtUtil.generateRefreshToken(user.getUsername(), sessionId);
 
-        // 6. Save new token
-        saveUserToken(user, newJwtToken, newRefreshToken, null, null);
+        // 6. Save new token in the old token's rotation family
+        saveUserToken(user, newJwtToken, newRefreshToken, sessionId, null, null, token);
 
         // 7. Return Response
         return new LoginResponse(
@@ -177,24 +341,33 @@ public class UserService implements UserDetailsService {
                 jwtUtil.getRefreshTokenExpirationTime());
     }
 
+    /**
+     * Revoke every session of a refresh token rotation family, committed even if the calling transaction rolls back.
+     */
+    private void revokeFamily(String familyId) {
+        List<String> sessionIds = tokenRepository.findValidSessionIdsByFamilyId(familyId);
+        tokenRepository.revokeAllByFamilyId(familyId, LocalDateTime.now());
+        // Already committed, while the calling transaction is about to roll back
+        long expiresAtMillis = System.currentTimeMillis() + jwtUtil.getMaxTokenLifetime();
+        sessionIds.forEach(sessionId -> tokenRevocationService.revokeSessionNow(sessionId, expiresAtMillis));
+    }
+
     @Transactional
     public void logout(String tokenValue) {
-        Token token = tokenRepository.findByToken(tokenValue)
+        Token token = findByTokenHash(TokenHashUtil.sha256(tokenValue))
                 .orElseThrow(() -> new IllegalArgumentException("Token not found"));
 
-        if (token.isExpired() || token.isRevoked()) {
+        // Conditional update: reports a token revoked by a concurrent request as already invalid
+        if (tokenRepository.revokeById(token.getId(), LocalDateTime.now()) == 0) {
             throw new IllegalArgumentException("Token is already invalid");
         }
-
-        token.setRevoked(true);
-        token.setExpired(true);
-        tokenRepository.save(token);
+        revokeSession(token.getSessionId());
     }
 
     @Transactional
     public void logoutAll(String tokenValue) {
         // Ensure the initiating token is valid
-        Token initiatingToken = tokenRepository.findByToken(tokenValue)
+        Token initiatingToken = findByTokenHash(TokenHashUtil.sha256(tokenValue))
                 .orElseThrow(() -> new IllegalArgumentException("Token not found"));
 
         if (initiatingToken.isExpired() || initiatingToken.isRevoked()) {
@@ -202,71 +375,76 @@ public class UserService implements UserDetailsService {
         }
 
         // Extract username from token
-        String username = jwtUtil.extractUsername(tokenValue);
+        String username = jwtUtil.parseToken(tokenValue).getSubject();
 
         // Ensure user exists
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new IllegalArgumentException("User not found"));
 
         // Revoke all tokens
-        List<Token> validTokens = tokenRepository.findAllValidTokensByUser(user.getId());
-        if (validTokens.isEmpty()) {
-            return;
-        }
+        revokeAllSessions(user);
+    }
 
-        validTokens.forEach(t -> {
-            t.setExpired(true);
-            t.setRevoked(true);
-        });
-        tokenRepository.saveAll(validTokens);
+    /**
+     * Revoke every session of the user: tokens issued so far fail validation through the user's token epoch, and
+     * their rows are revoked in one statement so they can no longer be refreshed or listed as devices.
+     * Must be called inside a transaction.
+     */
+    private void revokeAllSessions(User user) {
+        tokenEpochService.revokeAll(user);
+        userRepository.save(user);
+        tokenRepository.revokeAllByUser(user.getId(), LocalDateTime.now());
     }
 
 
+    /**
+     * Served from {@link UserDetailsCacheService}; a hit needs neither a transaction nor a query.
+     */
     @Override
-    @Transactional(readOnly = true)
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        return userDetailsCacheService.get(username, this::loadUserDetails);
+    }
+
+    private UserDetails loadUserDetails(String username) {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found with username: " + username));
 
-        List<GrantedAuthority> authorities = new ArrayList<>();
-        
-        // Add roles (Spring Security convention usually prefixes roles with "ROLE_")
-        for (Role role : user.getRoles()) {
-            authorities.add(new SimpleGrantedAuthority("ROLE_" + role.getName()));
-            // Add raw permissions
-            for (com.brett.mypassport.entity.Permission permission : role.getPermissions()) {
-                authorities.add(new SimpleGrantedAuthority(permission.getName()));
+        // Roles (prefixed with "ROLE_" by Spring Security convention) and raw permissions, from the permission snapshot
+        Set<GrantedAuthority> authorities = new LinkedHashSet<>();
+        EffectivePermissionService.Snapshot snapshot =
+                effectivePermissionService.getSnapshot(username, user.getAuthorityVersion());
+        if (snapshot != null) {
+            for (EffectivePermissionService.SystemGrants grants : snapshot.systems().values()) {
+                grants.roles().forEach(role -> authorities.add(new SimpleGrantedAuthority("ROLE_" + role)));
+                grants.permissions().forEach(permission -> authorities.add(new SimpleGrantedAuthority(permission)));
             }
         }
 
-        return new org.springframework.security.core.userdetails.User(
-                user.getUsername(),
-                user.getPassword(),
-                authorities
-        );
+        return new UserDetailsCacheService.CachedUserDetails(user.getUsername(), user.getPassword(), authorities,
+                user.getAuthorityVersion());
     }
 
     public UserResponse getUserProfile(String username) {
-        User user = userRepository.findByUsername(username)
+        UserRepository.UserSummary user = userRepository.findSummaryByUsername(username)
                 .orElseThrow(() -> new IllegalArgumentException("User not found"));
-                
-        return mapUserToUserResponse(user);
-    }
-    
-    private UserResponse mapUserToUserResponse(User user) {
-        java.util.Map<String, Set<String>> roles = user.getRoles().stream()
-                .collect(java.util.stream.Collectors.groupingBy(
-                        Role::getSysCode,
-                        java.util.stream.Collectors.mapping(Role::getName, java.util.stream.Collectors.toSet())
-                ));
-
-        java.util.Map<String, Set<String>> permissions = user.getRoles().stream()
-                .flatMap(role -> role.getPermissions().stream()
-                        .map(p -> new java.util.AbstractMap.SimpleEntry<>(role.getSysCode(), p.getName())))
-                .collect(java.util.stream.Collectors.groupingBy(
-                        java.util.Map.Entry::getKey,
-                        java.util.stream.Collectors.mapping(java.util.Map.Entry::getValue, java.util.stream.Collectors.toSet())
-                ));
+        return mapUserToUserResponse(user,
+                effectivePermissionService.getSnapshot(user.getUsername(), user.getAuthorityVersion()));
+    }
+
+    /**
+     * Map a user and their permission snapshot; both are loaded without touching the lazy associations.
+     */
+    private UserResponse mapUserToUserResponse(UserRepository.UserSummary user, EffectivePermissionService.Snapshot snapshot) {
+        java.util.Map<String, Set<String>> roles = new TreeMap<>();
+        java.util.Map<String, Set<String>> permissions = new TreeMap<>();
+        if (snapshot != null) {
+            snapshot.systems().forEach((sysCode, grants) -> {
+                roles.put(sysCode, grants.roles());
+                if (!grants.permissions().isEmpty()) {
+                    permissions.put(sysCode, grants.permissions());
+                }
+            });
+        }
 
         return new UserResponse(
                 user.getId(),
@@ -280,15 +458,39 @@ public class UserService implements UserDetailsService {
         );
     }
 
+    /**
+     * A page costs one query for the users, one count query and, for users without a current permission snapshot,
+     * one query for their grants.
+     */
     public Page<UserResponse> getAllUsers(Pageable pageable) {
-        return userRepository.findAll(pageable)
-                .map(this::mapUserToUserResponse);
+        Page<UserRepository.UserSummary> users = userRepository.findAllSummaries(pageable);
+        Map<String, EffectivePermissionService.Snapshot> snapshots = getSnapshots(users);
+        return users.map(user -> mapUserToUserResponse(user, snapshots.get(user.getUsername())));
+    }
+
+    /**
+     * Keyset-paginated variant of {@link #getAllUsers}: no count query, and deep slices cost the same as the first.
+     * @param cursor The cursor returned with the previous slice, or null for the first slice
+     */
+    public SliceResponse<UserResponse> scrollUsers(String cursor, int size) {
+        Window<UserRepository.UserSummary> users =
+                userRepository.findSummariesBy(KeysetCursor.decode(cursor), Limit.of(size), KeysetCursor.ORDER);
+        Map<String, EffectivePermissionService.Snapshot> snapshots = getSnapshots(users);
+        return SliceResponse.of(users, user -> mapUserToUserResponse(user, snapshots.get(user.getUsername())),
+                user -> KeysetCursor.encode(user.getCreatedAt(), user.getId()));
+    }
+
+    private Map<String, EffectivePermissionService.Snapshot> getSnapshots(Iterable<UserRepository.UserSummary> users) {
+        Map<String, Integer> versions = new HashMap<>();
+        users.forEach(user -> versions.put(user.getUsername(), user.getAuthorityVersion()));
+        return effectivePermissionService.getSnapshots(versions);
     }
 
     public UserResponse getUserById(Long id) {
-        User user = userRepository.findById(id)
+        UserRepository.UserSummary user = userRepository.findSummaryById(id)
                 .orElseThrow(() -> new IllegalArgumentException("User not found with ID: " + id));
-        return mapUserToUserResponse(user);
+        return mapUserToUserResponse(user,
+                effectivePermissionService.getSnapshot(user.getUsername(), user.getAuthorityVersion()));
     }
 
 
@@ -307,30 +509,28 @@ public class UserService implements UserDetailsService {
 
     @Transactional
     public void resetPassword(ResetPasswordRequest request) {
-        // 1. Verify code
-        boolean isVerified = verificationService.verifyCode(request.getEmail(), request.getVerificationCode());
-        if (!isVerified) {
-            throw new IllegalArgumentException("Invalid or expired verification code.");
-        }
-
-        // 2. Verify passwords match
+        // 1. Verify passwords match
         if (request.getNewPassword() == null || !request.getNewPassword().equals(request.getConfirmPassword())) {
             throw new IllegalArgumentException("Passwords do not match.");
         }
 
-        // 2. Find user
+        // 2. Hash the new password first: if the hashing pool is saturated the request fails with the code still usable
+        String encodedPassword = passwordEncoder.encode(request.getNewPassword());
+
+        // 3. Verify and consume the code
+        verificationService.consumeCode(request.getEmail(), request.getVerificationCode());
+
+        // 4. Find user
         User user = userRepository.findByEmail(request.getEmail())
                 .orElseThrow(() -> new IllegalArgumentException("User not found"));
 
-        // 3. Update password
-        user.setPassword(passwordEncoder.encode(request.getNewPassword()));
+        // 5. Update password
+        user.setPassword(encodedPassword);
         userRepository.save(user);
+        userDetailsCacheService.evictAfterCommit(user.getUsername());
 
-        // 4. Invalidate code
-        verificationService.deleteCode(request.getEmail());
-
-        // 5. Optionally revoke all tokens (security best practice)
-        // revokeAllUserTokens(user); // If we had this method exposed/implemented easily here
+        // 6. Revoke all tokens
+        revokeAllSessions(user);
     }
 
     @Transactional
@@ -352,6 +552,10 @@ public class UserService implements UserDetailsService {
         // 4. Update password
         user.setPassword(passwordEncoder.encode(request.getNewPassword()));
         userRepository.save(user);
+        userDetailsCacheService.evictAfterCommit(user.getUsername());
+
+        // 5. Revoke all tokens, including the one used for this request
+        revokeAllSessions(user);
     }
 
     public Page<com.brett.mypassport.dto.DeviceResponse> getActiveDevices(String username, String currentToken, Pageable pageable) {
@@ -360,22 +564,44 @@ public class UserService implements UserDetailsService {
         
         // Remove "Bearer " if present to match stored token
         String tokenValue = currentToken.startsWith("Bearer ") ? currentToken.substring(7) : currentToken;
+        byte[] currentTokenHash = TokenHashUtil.sha256(tokenValue);
 
-        return tokenRepository.findAllValidTokensByUser(user.getId(), pageable)
-                .map(token -> new com.brett.mypassport.dto.DeviceResponse(
-                        token.getId(),
-                        token.getIpAddress(),
-                        token.getDeviceInfo(),
-                        token.getCreatedAt(), // Assuming created_at is strictly when session started. Ideally last_used.
-                        token.getToken().equals(tokenValue)
-                ));
+        return tokenRepository.findAllValidTokensByUser(user.getId(), LocalDateTime.now(), pageable)
+                .map(token -> mapTokenToDeviceResponse(token, currentTokenHash));
+    }
+
+    /**
+     * Keyset-paginated variant of {@link #getActiveDevices}.
+     * @param cursor The cursor returned with the previous slice, or null for the first slice
+     */
+    public SliceResponse<com.brett.mypassport.dto.DeviceResponse> scrollActiveDevices(String username, String currentToken, String cursor, int size) {
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new IllegalArgumentException("User not found"));
+
+        String tokenValue = currentToken.startsWith("Bearer ") ? currentToken.substring(7) : currentToken;
+        byte[] currentTokenHash = TokenHashUtil.sha256(tokenValue);
+
+        Window<Token> tokens = tokenRepository.findByUserIdAndRevokedFalseAndRefreshExpiresAtAfter(
+                user.getId(), LocalDateTime.now(), KeysetCursor.decode(cursor), Limit.of(size), KeysetCursor.ORDER);
+        return SliceResponse.of(tokens, token -> mapTokenToDeviceResponse(token, currentTokenHash),
+                token -> KeysetCursor.encode(token.getCreatedAt(), token.getId()));
+    }
+
+    private com.brett.mypassport.dto.DeviceResponse mapTokenToDeviceResponse(Token token, byte[] currentTokenHash) {
+        return new com.brett.mypassport.dto.DeviceResponse(
+                token.getId(),
+                token.getIpAddress(),
+                token.getDeviceInfo(),
+                token.getCreatedAt(), // Assuming created_at is strictly when session started. Ideally last_used.
+                Arrays.equals(token.getTokenHash(), currentTokenHash)
+        );
     }
 
     @Transactional
     public void revokeDevice(Long tokenId, String username, String currentToken) {
         // 1. Validate current token
         String tokenValue = currentToken.startsWith("Bearer ") ? currentToken.substring(7) : currentToken;
-        Token initiatingToken = tokenRepository.findByToken(tokenValue)
+        Token initiatingToken = findByTokenHash(TokenHashUtil.sha256(tokenValue))
                 .orElseThrow(() -> new IllegalArgumentException("Invalid token"));
 
         if (initiatingToken.isRevoked() || initiatingToken.isExpired()) {
@@ -391,15 +617,11 @@ public class UserService implements UserDetailsService {
             throw new IllegalArgumentException("Unauthorized action");
         }
 
-        // 4. Check if already revoked/expired
-        if (token.isRevoked() || token.isExpired()) {
+        // 4. Revoke, unless already revoked/expired (possibly by a concurrent request)
+        if (tokenRepository.revokeById(token.getId(), LocalDateTime.now()) == 0) {
             throw new IllegalArgumentException("Device/Token is already invalid");
         }
-
-        // 5. Revoke
-        token.setRevoked(true);
-        token.setExpired(true);
-        tokenRepository.save(token);
+        revokeSession(token.getSessionId());
     }
 
     public Map<String, Object> validateToken(String tokenValue) {
@@ -408,31 +630,81 @@ public class UserService implements UserDetailsService {
             String token = tokenValue.startsWith("Bearer ") ? tokenValue.substring(7) : tokenValue;
 
             // 1. Check signature and expiry (JwtUtil throws exception if invalid)
-            if (!jwtUtil.validateToken(token)) {
+            JwtClaims claims = jwtUtil.parseToken(token);
+            if (claims.isExpired()) {
                 return Map.of("valid", false, "reason", "Expired or invalid structure");
             }
 
-            // 2. Check DB revocation
-            Token dbToken = tokenRepository.findByToken(token).orElse(null);
-            if (dbToken == null || dbToken.isRevoked() || dbToken.isExpired()) {
+            // 2. Reject tokens issued before the user last revoked all of their sessions
+            if (tokenEpochService.isRevoked(claims.getSubject(), claims.getIssuedAt().getTime() / 1000)) {
                 return Map.of("valid", false, "reason", "Revoked or not found in registry");
             }
 
-            // 3. Return details
-            String username = jwtUtil.extractUsername(token);
+            // 3. Check revocation: in memory by session ID, or in the DB for tokens issued before session IDs
+            // and while the revocation set could not be loaded from Redis
+            String sessionId = claims.getSessionId();
+            if (sessionId != null && tokenRevocationService.isSynced()) {
+                if (tokenRevocationService.isRevoked(sessionId)) {
+                    return Map.of("valid", false, "reason", "Revoked or not found in registry");
+                }
+            } else {
+                byte[] tokenHash = TokenHashUtil.sha256(token);
+                Token dbToken = tokenRepository.findByTokenHash(tokenHash).orElse(null);
+                // A session still queued for write-behind is new; revoking it would have written it to the table first
+                boolean queued = dbToken == null && sessionWriteBehindService.isPending(tokenHash);
+                if (!queued && (dbToken == null || dbToken.isRevoked() || dbToken.isExpired())) {
+                    return Map.of("valid", false, "reason", "Revoked or not found in registry");
+                }
+            }
+
+            // 4. Return details
+            String username = claims.getSubject();
             return Map.of(
                     "valid", true,
                     "active", true,
                     "username", username,
                     "sub", username,
-                    "exp", jwtUtil.extractExpiration(token)
+                    "exp", claims.getExpiration()
             );
         } catch (Exception e) {
             return Map.of("valid", false, "reason", "Invalid token: " + e.getMessage());
         }
     }
 
+    /**
+     * Served from {@link PermissionDecisionCacheService} when the same token already asked the same question.
+     */
     public PermissionCheckResponse checkPermission(PermissionCheckRequest request) {
+        long start = System.nanoTime();
+        String token = request.getToken().startsWith("Bearer ") ? request.getToken().substring(7) : request.getToken();
+        PermissionDecisionCacheService.DecisionKey key = new PermissionDecisionCacheService.DecisionKey(
+                TokenHashUtil.sha256Hex(token), request.getSysCode(), request.getMethod(), request.getPath(), request.getRequiredPermission());
+        PermissionCheckResponse cached = permissionDecisionCacheService.get(key);
+        if (cached != null) {
+            permissionDecisionCacheService.recordHit(System.nanoTime() - start);
+            return cached;
+        }
+
+        // Read the session and authority version before deciding: a revocation or grant change that lands meanwhile
+        // then leaves an entry that fails re-validation, never a wrong one. Tokens without a session are not cached.
+        JwtClaims claims = null;
+        Integer authorityVersion = null;
+        try {
+            claims = jwtUtil.parseToken(token);
+            authorityVersion = authorityVersionService.getCurrentVersion(claims.getSubject());
+        } catch (Exception e) {
+            // Invalid tokens are rejected, and not cached, by the full check below
+        }
+        PermissionCheckResponse response = decidePermission(request);
+        if (response.isValid() && claims != null && claims.getSessionId() != null && authorityVersion != null) {
+            permissionDecisionCacheService.put(key, response, claims.getSessionId(), authorityVersion,
+                    claims.getIssuedAt().getTime() / 1000, claims.getExpiration().getTime());
+        }
+        permissionDecisionCacheService.recordMiss(System.nanoTime() - start);
+        return response;
+    }
+
+    private PermissionCheckResponse decidePermission(PermissionCheckRequest request) {
         // 1. Validate Token First
         Map<String, Object> tokenValidation = validateToken(request.getToken());
         if (!(boolean) tokenValidation.get("valid")) {
@@ -441,71 +713,77 @@ public class UserService implements UserDetailsService {
 
         String username = (String) tokenValidation.get("username");
 
-        // 2. Load User and Roles
-        User user = userRepository.findByUsername(username).orElse(null);
-        if (user == null) {
+        // 2. Load the user's compiled permissions for the specific mapping (sysCode)
+        PermissionMatcher userPermissions = permissionMatcherService.getMatcher(username, request.getSysCode());
+        if (userPermissions == null) {
             return new PermissionCheckResponse(false, false, username, "User not found");
         }
 
-        // 3. Extract permissions for the specific mapping (sysCode)
-        Set<String> userPermissions = new HashSet<>();
-        for (Role role : user.getRoles()) {
-            if (role.getSysCode() != null && role.getSysCode().equals(request.getSysCode())) {
-                for (com.brett.mypassport.entity.Permission permission : role.getPermissions()) {
-                    if (permission.getSysCode() != null && permission.getSysCode().equals(request.getSysCode())) {
-                        userPermissions.add(permission.getName());
-                    }
-                }
+        // 3. Verify Permission
+        return evaluatePermission(username, userPermissions, request.getRequiredPermission(), request.getPath(), request.getMethod());
+    }
+
+    /**
+     * Evaluate every check against every token for one system. Each distinct token is validated and each distinct
+     * user's permissions are loaded once per batch; large batches are evaluated in parallel.
+     * @return One result per (token, check) pair, token by token, each token's results in the order of the checks
+     */
+    public List<PermissionCheckResponse> checkPermissions(BatchPermissionCheckRequest request) {
+        List<String> tokens = request.getTokens();
+        List<PermissionCheck> checks = request.getChecks();
+
+        // 1. Validate each token and load each user's permissions, sequentially (database access stays on this thread)
+        Map<String, Map<String, Object>> validations = new HashMap<>();
+        Map<String, PermissionMatcher> permissionsByUser = new HashMap<>();
+        String[] usernames = new String[tokens.size()];
+        PermissionCheckResponse[] failures = new PermissionCheckResponse[tokens.size()];
+        for (int t = 0; t < tokens.size(); t++) {
+            Map<String, Object> tokenValidation = validations.computeIfAbsent(tokens.get(t), this::validateToken);
+            if (!(boolean) tokenValidation.get("valid")) {
+                failures[t] = new PermissionCheckResponse(false, false, null, (String) tokenValidation.get("reason"));
+                continue;
+            }
+            usernames[t] = (String) tokenValidation.get("username");
+            if (!permissionsByUser.containsKey(usernames[t])) {
+                permissionsByUser.put(usernames[t], permissionMatcherService.getMatcher(usernames[t], request.getSysCode()));
+            }
+            if (permissionsByUser.get(usernames[t]) == null) {
+                failures[t] = new PermissionCheckResponse(false, false, usernames[t], "User not found");
             }
         }
 
+        // 2. Evaluate every (token, check) pair; the pairs are independent, so large batches are split across cores
+        PermissionCheckResponse[] results = new PermissionCheckResponse[tokens.size() * checks.size()];
+        IntStream pairs = IntStream.range(0, results.length);
+        if (results.length >= batchParallelThreshold) {
+            pairs = pairs.parallel();
+        }
+        pairs.forEach(i -> {
+            int t = i / checks.size();
+            PermissionCheck check = checks.get(i % checks.size());
+            PermissionCheckResponse failure = failures[t];
+            results[i] = failure != null
+                    ? new PermissionCheckResponse(failure.isValid(), false, failure.getUsername(), failure.getReason())
+                    : evaluatePermission(usernames[t], permissionsByUser.get(usernames[t]),
+                            check.getRequiredPermission(), check.getPath(), check.getMethod());
+        });
+        return Arrays.asList(results);
+    }
 
-        // 4. Verify Permission
+    private PermissionCheckResponse evaluatePermission(String username, PermissionMatcher userPermissions,
+                                                       String requiredPermission, String path, String method) {
         boolean hasPermission = false;
         boolean checked = false;
 
-        // 4a. Check Exact Permission String if provided
-        if (request.getRequiredPermission() != null && !request.getRequiredPermission().isEmpty()) {
-            hasPermission = userPermissions.contains(request.getRequiredPermission());
+        // 3a. Check Exact Permission String if provided
+        if (requiredPermission != null && !requiredPermission.isEmpty()) {
+            hasPermission = userPermissions.hasPermission(requiredPermission);
             checked = true;
-            if (!hasPermission) {
-//                return new PermissionCheckResponse(true, false, username, "Lack of required permission string");
-            }
         }
 
-        // 4b. Check Path and Method with AntPathMatcher if provided
-        if (request.getPath() != null && !request.getPath().isEmpty()) {
-            AntPathMatcher pathMatcher = new AntPathMatcher();
-            String path = request.getPath();
-            String methodAndPath = request.getMethod() != null && !request.getMethod().isEmpty() 
-                    ? request.getMethod().toUpperCase() + ":" + path 
-                    : null;
-
-            boolean pathMatched = false;
-            for (String perm : userPermissions) {
-                // Ensure permission string can act as a prefix if it ends with a wildcard
-                String normalizedPerm = perm;
-                boolean isPrefixMatch = perm.endsWith("/*") || perm.endsWith("/**");
-                if (isPrefixMatch) {
-                   normalizedPerm = perm.replaceAll("/\\*+$", "/");
-                }
-
-                // 1. Check exact method:path pattern (e.g. "GET:/api/v1/orders/**")
-                if (methodAndPath != null) {
-                     if (pathMatcher.match(perm, methodAndPath) || 
-                        (isPrefixMatch && methodAndPath.contains(":") && methodAndPath.substring(methodAndPath.indexOf(":") + 1).startsWith(normalizedPerm))) {
-                           pathMatched = true;
-                           break;
-                     }
-                }
-                
-                // 2. Fallback to check just the path pattern (e.g. "/api/v1/orders/**") regardless of method
-                if (pathMatcher.match(perm, path) || (isPrefixMatch && path.startsWith(normalizedPerm))) {
-                    pathMatched = true;
-                    break;
-                }
-            }
-            hasPermission = pathMatched;
+        // 3b. Check Path and Method (Ant patterns, with or without a "METHOD:" qualifier) if provided
+        if (path != null && !path.isEmpty()) {
+            hasPermission = userPermissions.matchesPath(path, method);
             checked = true;
         }
 
@@ -538,6 +816,7 @@ public class UserService implements UserDetailsService {
         }
 
         user.setRoles(roles);
+        authorityVersionService.bumpUser(user);
         userRepository.save(user);
     }
 
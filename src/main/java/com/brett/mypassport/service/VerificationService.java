@@ -1,12 +1,23 @@
 package com.brett.mypassport.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.Random;
-import java.util.concurrent.TimeUnit;
 
+/**
+ * Email verification codes, stored in Redis ("verification_code:&lt;email&gt;") for 60 seconds.
+ * <p>
+ * A code is checked and consumed by one server-side script, so it can be used only once even by concurrent requests.
+ * Wrong guesses are counted ("verification_code_attempts:&lt;email&gt;", expiring with the code); after
+ * {@code app.verification.max-attempts} of them the code is discarded and a new one must be requested.
+ */
 @Service
 public class VerificationService {
 
@@ -16,22 +27,73 @@ public class VerificationService {
     @Autowired
     private EmailService emailService;
 
+    @Value("${app.verification.max-attempts:5}")
+    private int maxAttempts;
+
+    private static final Duration CODE_TTL = Duration.ofSeconds(60);
+
     private static final String KEY_PREFIX = "verification_code:";
+    private static final String ATTEMPTS_KEY_PREFIX = "verification_code_attempts:";
+
+    // Store the code (ARGV[1]) for ARGV[2] seconds and reset the failed attempts of the previous one
+    private static final RedisScript<Long> STORE_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('SET', KEYS[1], ARGV[1], 'EX', ARGV[2])
+            redis.call('DEL', KEYS[2])
+            return 1
+            """, Long.class);
+
+    // 1: the code matched and is consumed; 0: no code or a wrong one; -1: wrong, and the ARGV[2]th failure discards the code
+    private static final RedisScript<Long> CONSUME_SCRIPT = new DefaultRedisScript<>("""
+            local stored = redis.call('GET', KEYS[1])
+            if not stored then
+                return 0
+            end
+            if stored == ARGV[1] then
+                redis.call('DEL', KEYS[1], KEYS[2])
+                return 1
+            end
+            local attempts = redis.call('INCR', KEYS[2])
+            if attempts >= tonumber(ARGV[2]) then
+                redis.call('DEL', KEYS[1], KEYS[2])
+                return -1
+            end
+            if attempts == 1 then
+                redis.call('PEXPIRE', KEYS[2], math.max(redis.call('PTTL', KEYS[1]), 1))
+            end
+            return 0
+            """, Long.class);
 
     public void sendVerificationCode(String email) {
         String code = generateCode();
         // Save to Redis with 60s expiration
-        redisTemplate.opsForValue().set(KEY_PREFIX + email, code, 60, TimeUnit.SECONDS);
+        redisTemplate.execute(STORE_SCRIPT, keys(email), code, Long.toString(CODE_TTL.toSeconds()));
 
         // Send email
         String subject = "Your Verification Code";
         String content = "Your verification code is: " + code + "\nThis code will expire in 60 seconds.";
-        emailService.sendSimpleMessage(email, subject, content);
+        // An email still queued once the code expired is not worth sending
+        emailService.sendSimpleMessage(email, subject, content, CODE_TTL);
     }
 
-    public boolean verifyCode(String email, String code) {
-        String storedCode = redisTemplate.opsForValue().get(KEY_PREFIX + email);
-        return storedCode != null && storedCode.equals(code);
+    /**
+     * Check the code and, if it matches, delete it, in one Redis round trip.
+     * @throws IllegalArgumentException If the code is wrong, expired or was already used
+     */
+    public void consumeCode(String email, String code) {
+        if (code == null) {
+            throw new IllegalArgumentException("Invalid or expired verification code.");
+        }
+        Long result = redisTemplate.execute(CONSUME_SCRIPT, keys(email), code, Integer.toString(maxAttempts));
+        if (result == null || result == 0) {
+            throw new IllegalArgumentException("Invalid or expired verification code.");
+        }
+        if (result < 0) {
+            throw new IllegalArgumentException("Too many invalid attempts. Please request a new verification code.");
+        }
+    }
+
+    private static List<String> keys(String email) {
+        return List.of(KEY_PREFIX + email, ATTEMPTS_KEY_PREFIX + email);
     }
 
     private String generateCode() {
@@ -39,8 +101,4 @@ public class VerificationService {
         int code = 100000 + random.nextInt(900000);
         return String.valueOf(code);
     }
-
-    public void deleteCode(String email) {
-        redisTemplate.delete(KEY_PREFIX + email);
-    }
 }
@@ -0,0 +1,3 @@
+-- Bumped whenever a user's effective roles or permissions change; access tokens that embed
+-- authorities carry the version they were issued under and are rejected once it moves on
+ALTER TABLE users ADD COLUMN authority_version INT NOT NULL DEFAULT 0;
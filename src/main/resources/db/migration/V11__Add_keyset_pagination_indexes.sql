@@ -0,0 +1,7 @@
+-- Keyset pagination scrolls every list in (created_at, id) order; each filter gets an index with the keys last
+CREATE INDEX idx_users_created_at_id ON users (created_at, id);
+CREATE INDEX idx_roles_created_at_id ON roles (created_at, id);
+CREATE INDEX idx_roles_sys_code_created_at_id ON roles (sys_code, created_at, id);
+CREATE INDEX idx_permissions_created_at_id ON permissions (created_at, id);
+CREATE INDEX idx_permissions_sys_code_created_at_id ON permissions (sys_code, created_at, id);
+CREATE INDEX idx_tokens_user_id_created_at_id ON tokens (user_id, created_at, id);
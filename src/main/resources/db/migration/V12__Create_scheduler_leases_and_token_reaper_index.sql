@@ -0,0 +1,9 @@
+-- Time-bounded leases that let one node at a time run a cluster-wide background job
+CREATE TABLE `scheduler_leases` (
+    `name` VARCHAR(64) PRIMARY KEY,
+    `owner` VARCHAR(128) NOT NULL,
+    `expires_at` TIMESTAMP(3) NOT NULL
+);
+
+-- The token reaper scans sessions by age
+CREATE INDEX idx_tokens_created_at ON tokens (created_at);
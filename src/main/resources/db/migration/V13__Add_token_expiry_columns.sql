@@ -0,0 +1,13 @@
+-- Expiry of the session's access and refresh tokens, so validity is a range condition instead of a JWT parse
+ALTER TABLE tokens
+ADD COLUMN expires_at TIMESTAMP(3) NULL,
+ADD COLUMN refresh_expires_at TIMESTAMP(3) NULL;
+
+-- Existing rows: access tokens have always lived 2 hours and refresh tokens 1 day
+UPDATE tokens
+SET expires_at = TIMESTAMPADD(HOUR, 2, created_at),
+    refresh_expires_at = TIMESTAMPADD(DAY, 1, created_at)
+WHERE expires_at IS NULL;
+
+-- Serves findAllValidTokensByUser (user_id = ? AND revoked = FALSE AND refresh_expires_at > ?) as a range scan
+CREATE INDEX idx_tokens_user_revoked_refresh_expires ON tokens (user_id, revoked, refresh_expires_at);
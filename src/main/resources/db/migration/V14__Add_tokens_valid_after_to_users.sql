@@ -0,0 +1,3 @@
+-- Epoch seconds before which all of the user's tokens are revoked (password change/reset, logout from all devices);
+-- compared with the tokens' "iat" claim, so revoking every session is one write
+ALTER TABLE users ADD COLUMN tokens_valid_after BIGINT NULL;
@@ -0,0 +1,12 @@
+-- Refresh token rotation families: every row rotated from a login shares its family_id (the login's session ID)
+-- and points at the row it replaced, so a reused refresh token can revoke the whole family
+ALTER TABLE tokens
+ADD COLUMN family_id VARCHAR(36) NULL,
+ADD COLUMN parent_id BIGINT NULL;
+
+-- Existing rows each start their own family
+UPDATE tokens SET family_id = session_id WHERE family_id IS NULL;
+
+-- Serves the family revocation (family_id = ? AND revoked = FALSE) and the rotated-token check (parent_id = ?)
+CREATE INDEX idx_tokens_family_revoked ON tokens (family_id, revoked);
+CREATE INDEX idx_tokens_parent_id ON tokens (parent_id);
@@ -0,0 +1,17 @@
+-- Emails waiting to be sent by the outbox workers; sent rows are deleted, rows that keep failing stay as DEAD
+CREATE TABLE `email_outbox` (
+    `id` BIGINT AUTO_INCREMENT PRIMARY KEY,
+    `recipient` VARCHAR(255) NOT NULL,
+    `subject` VARCHAR(255) NOT NULL,
+    `body` TEXT NOT NULL,
+    `status` VARCHAR(16) NOT NULL DEFAULT 'PENDING',
+    `attempts` INT NOT NULL DEFAULT 0,
+    `next_attempt_at` TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+    `claimed_by` VARCHAR(160) NULL,
+    `claimed_until` TIMESTAMP(3) NULL,
+    `last_error` VARCHAR(1000) NULL,
+    `created_at` TIMESTAMP(3) NULL
+);
+
+-- Workers claim PENDING rows that are due, oldest first
+CREATE INDEX idx_email_outbox_status_next_attempt ON email_outbox (status, next_attempt_at);
@@ -0,0 +1,2 @@
+-- Messages past not_after (e.g. carrying an expired verification code) are dropped instead of sent or retried
+ALTER TABLE `email_outbox` ADD COLUMN `not_after` TIMESTAMP(3) NULL;
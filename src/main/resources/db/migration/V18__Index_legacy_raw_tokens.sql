@@ -0,0 +1,3 @@
+-- Lets TokenHashBackfillRunner find the rows that still hold a raw token without scanning the table;
+-- a one-character prefix is enough to tell NULL from the rest
+CREATE INDEX idx_tokens_token_legacy ON tokens (token(1));
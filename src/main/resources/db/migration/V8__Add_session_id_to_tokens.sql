@@ -0,0 +1,7 @@
+-- Session ID carried in the "sid" claim of both tokens of a login; revocations are tracked by it
+ALTER TABLE tokens ADD COLUMN session_id VARCHAR(36);
+
+-- The jti and sid claims push RS256 tokens past 512 characters.
+-- 768 is the widest utf8mb4 VARCHAR a unique index accepts.
+ALTER TABLE tokens MODIFY COLUMN token VARCHAR(768) NOT NULL;
+ALTER TABLE tokens MODIFY COLUMN refresh_token VARCHAR(768);
@@ -0,0 +1,11 @@
+-- Look tokens up by fixed-width SHA-256 digests instead of the raw JWT strings
+ALTER TABLE tokens
+ADD COLUMN token_hash BINARY(32),
+ADD COLUMN refresh_token_hash BINARY(32);
+
+CREATE UNIQUE INDEX uq_tokens_token_hash ON tokens (token_hash);
+CREATE INDEX idx_tokens_refresh_token_hash ON tokens (refresh_token_hash);
+
+-- New rows only store the digests; existing rows are hashed in batches by TokenHashBackfillRunner
+ALTER TABLE tokens DROP INDEX token;
+ALTER TABLE tokens MODIFY COLUMN token VARCHAR(768) NULL;
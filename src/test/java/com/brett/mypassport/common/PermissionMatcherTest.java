@@ -0,0 +1,110 @@
+package com.brett.mypassport.common;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PermissionMatcherTest {
+
+    private static final AntPathMatcher PATH_MATCHER = new AntPathMatcher();
+
+    private static final List<String> PERMISSIONS = List.of(
+            // Literal paths, with and without a trailing separator or method
+            "/api/v1/orders", "/api/v1/users/", "GET:/api/v1/reports", "POST:/api/v1/orders",
+            // Trailing "**" and "*", which also grant by prefix
+            "/api/v1/sev/**", "/api/v1/files/*", "GET:/api/v1/orders/**", "DELETE:/api/v1/users/*",
+            // Wildcards inside the pattern, matched with AntPathMatcher
+            "/api/v1/*/settings", "/api/v1/**/audit", "/api/v?/health", "/api/v1/items/{id}", "GET:/api/v1/*.json",
+            // Prefix-only patterns and plain permission names
+            "/static/**", "relative/path/**", "**", "order:read", "GET:");
+
+    private static final List<String> PATHS = List.of(
+            "/", "", "/api/v1/orders", "/api/v1/orders/", "/api/v1/orders/42", "/api/v1/orders/42/items",
+            "/api/v1/users", "/api/v1/users/", "/api/v1/users/7", "/api/v1/users/7/roles",
+            "/api/v1/reports", "/api/v1/reports/2024", "/api/v1/sev", "/api/v1/sev/", "/api/v1/sev/incidents/42/timeline",
+            "/api/v1/severity", "/api/v1/files", "/api/v1/files/", "/api/v1/files/a.txt", "/api/v1/files/a/b",
+            "/api/v1/team/settings", "/api/v1/team/a/settings", "/api/v1/a/b/audit", "/api/v1/audit",
+            "/api/v2/health", "/api/v10/health", "/api/v1/items/5", "/api/v1/items/5/x", "/api/v1/data.json",
+            "/static", "/static/css/app.css", "//api//v1//orders", "/api/v1/orders//42", "relative/path/x",
+            "/relative/path/x", "order:read", "/other/incidents/42");
+
+    private static final List<String> METHODS = Arrays.asList(null, "", "GET", "get", "POST", "DELETE");
+
+    @Test
+    public void testMatchesLikeAntPathMatcherLoop() {
+        // Every single permission, so a pattern cannot hide behind another that grants the same path
+        for (String permission : PERMISSIONS) {
+            assertSameDecisions(Set.of(permission));
+        }
+        assertSameDecisions(Set.copyOf(PERMISSIONS));
+        assertSameDecisions(Set.of("/api/v1/sev/**", "GET:/api/v1/orders/**", "/api/v1/*/settings"));
+        assertSameDecisions(Set.of());
+    }
+
+    @Test
+    public void testTrailingDoubleWildcardGrantsPrefix() {
+        PermissionMatcher matcher = PermissionMatcher.compile(Set.of("/api/v1/sev/**"));
+        assertTrue(matcher.matchesPath("/api/v1/sev", null));
+        assertTrue(matcher.matchesPath("/api/v1/sev/incidents/42", "DELETE"));
+        assertFalse(matcher.matchesPath("/api/v1/severity", "GET"));
+    }
+
+    @Test
+    public void testMethodQualifiedPermissionRequiresMethod() {
+        PermissionMatcher matcher = PermissionMatcher.compile(Set.of("GET:/api/v1/reports"));
+        assertTrue(matcher.matchesPath("/api/v1/reports", "GET"));
+        assertTrue(matcher.matchesPath("/api/v1/reports", "get"));
+        assertFalse(matcher.matchesPath("/api/v1/reports", "POST"));
+        assertFalse(matcher.matchesPath("/api/v1/reports", null));
+    }
+
+    @Test
+    public void testHasPermissionIsExact() {
+        PermissionMatcher matcher = PermissionMatcher.compile(Set.of("order:read", "/api/v1/sev/**"));
+        assertTrue(matcher.hasPermission("order:read"));
+        assertFalse(matcher.hasPermission("order:write"));
+        assertFalse(matcher.hasPermission("/api/v1/sev/incidents"));
+    }
+
+    private static void assertSameDecisions(Set<String> permissions) {
+        PermissionMatcher matcher = PermissionMatcher.compile(permissions);
+        for (String path : PATHS) {
+            for (String method : METHODS) {
+                assertEquals(antPathMatcherLoop(permissions, path, method), matcher.matchesPath(path, method),
+                        () -> permissions + " " + method + " " + path);
+            }
+        }
+    }
+
+    /**
+     * The check UserService ran before permissions were compiled: every permission against "METHOD:path" and the
+     * bare path, plus the prefix rule for permissions ending in "/*" or "/**".
+     */
+    private static boolean antPathMatcherLoop(Set<String> permissions, String path, String method) {
+        String methodAndPath = method != null && !method.isEmpty() ? method.toUpperCase() + ":" + path : null;
+        for (String perm : permissions) {
+            String normalizedPerm = perm;
+            boolean isPrefixMatch = perm.endsWith("/*") || perm.endsWith("/**");
+            if (isPrefixMatch) {
+                normalizedPerm = perm.replaceAll("/\\*+$", "/");
+            }
+            if (methodAndPath != null) {
+                if (PATH_MATCHER.match(perm, methodAndPath)
+                        || (isPrefixMatch && methodAndPath.substring(methodAndPath.indexOf(":") + 1).startsWith(normalizedPerm))) {
+                    return true;
+                }
+            }
+            if (PATH_MATCHER.match(perm, path) || (isPrefixMatch && path.startsWith(normalizedPerm))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,202 @@
+package com.brett.mypassport.config;
+
+import com.brett.mypassport.service.LeaseService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.KeyPair;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class JwtKeyRingTest {
+
+    private static final DateTimeFormatter KID_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneOffset.UTC);
+
+    @TempDir
+    private Path keyDir;
+
+    private JwtKeyRing keyRing;
+
+    @BeforeEach
+    public void setUp() {
+        keyRing = newKeyRing(mock(LeaseService.class));
+    }
+
+    @Test
+    public void testNewKeyIsNotActiveBeforeActivationDelay() throws Exception {
+        String old = writeKey(Instant.now().minus(1, ChronoUnit.DAYS));
+        String fresh = writeKey(Instant.now().minus(1, ChronoUnit.MINUTES));
+
+        keyRing.reload();
+
+        assertEquals(old, keyRing.getActiveKey().getKid());
+        // Published ahead of use, so verifiers already know it when it becomes active
+        assertNotNull(keyRing.getVerificationKey(fresh));
+        assertEquals(2, jwkCount());
+    }
+
+    @Test
+    public void testNewKeyIsActiveAfterActivationDelay() throws Exception {
+        writeKey(Instant.now().minus(1, ChronoUnit.DAYS));
+        String matured = writeKey(Instant.now().minus(20, ChronoUnit.MINUTES));
+
+        keyRing.reload();
+
+        assertEquals(matured, keyRing.getActiveKey().getKid());
+    }
+
+    @Test
+    public void testOnlyKeyIsActiveEvenBeforeActivationDelay() throws Exception {
+        String only = writeKey(Instant.now());
+
+        keyRing.reload();
+
+        assertEquals(only, keyRing.getActiveKey().getKid());
+    }
+
+    @Test
+    public void testSupersededKeysAreRetiredAfterRetention() throws Exception {
+        String retired = writeKey(Instant.now().minus(10, ChronoUnit.DAYS));
+        // Superseded one day ago by the active key, so still within retention
+        String superseded = writeKey(Instant.now().minus(5, ChronoUnit.DAYS));
+        String active = writeKey(Instant.now().minus(1, ChronoUnit.DAYS));
+
+        keyRing.reload();
+
+        assertEquals(active, keyRing.getActiveKey().getKid());
+        assertNotNull(keyRing.getVerificationKey(superseded));
+        assertNull(keyRing.getVerificationKey(retired));
+        assertEquals(2, jwkCount());
+    }
+
+    @Test
+    public void testCreationTimeComesFromKidNotFileTime() throws Exception {
+        String older = writeKey(Instant.now().minus(2, ChronoUnit.DAYS));
+        String newer = writeKey(Instant.now().minus(1, ChronoUnit.DAYS));
+        // A copy or checkout gives the older key the newest file time
+        Files.setLastModifiedTime(keyDir.resolve(older + ".key"), FileTime.from(Instant.now()));
+        Files.setLastModifiedTime(keyDir.resolve(newer + ".key"), FileTime.from(Instant.now().minus(30, ChronoUnit.DAYS)));
+
+        keyRing.reload();
+
+        assertEquals(newer, keyRing.getActiveKey().getKid());
+        assertEquals(2, jwkCount());
+    }
+
+    @Test
+    public void testCreationTimeOfCustomKidIsPinnedOnFirstSight() throws Exception {
+        Instant firstSeen = Instant.now().minus(1, ChronoUnit.DAYS).truncatedTo(ChronoUnit.SECONDS);
+        writeKey("legacy", firstSeen);
+
+        keyRing.reload();
+        Path createdFile = keyDir.resolve("legacy.created");
+        assertTrue(Files.exists(createdFile));
+        assertEquals(firstSeen, Instant.parse(Files.readString(createdFile).trim()));
+
+        // Later file time changes no longer move the key
+        Files.setLastModifiedTime(keyDir.resolve("legacy.key"), FileTime.from(Instant.now()));
+        keyRing.reload();
+        assertEquals(firstSeen, keyRing.getActiveKey().getCreatedAt());
+    }
+
+    @Test
+    public void testOnlyOneNodeRotatesTheSharedDirectory() throws Exception {
+        writeKey(Instant.now().minus(31, ChronoUnit.DAYS));
+        LeaseService first = mock(LeaseService.class);
+        LeaseService second = mock(LeaseService.class);
+        LeaseService busy = mock(LeaseService.class);
+        when(first.tryAcquire(eq("jwt-key-rotation"), any())).thenReturn(true);
+        when(second.tryAcquire(eq("jwt-key-rotation"), any())).thenReturn(true);
+        JwtKeyRing secondNode = newKeyRing(second);
+        JwtKeyRing busyNode = newKeyRing(busy);
+        // All nodes loaded the directory before the rotation was due
+        secondNode.reload();
+        busyNode.reload();
+
+        // Another node holds the lease
+        busyNode.rotateIfDue();
+        assertEquals(1, keyFileCount());
+
+        newKeyRing(first).rotateIfDue();
+        assertEquals(2, keyFileCount());
+        verify(first).release("jwt-key-rotation");
+
+        // The next holder re-reads the directory and finds the new key
+        secondNode.rotateIfDue();
+        assertEquals(2, keyFileCount());
+        verify(busy, never()).release(any());
+    }
+
+    @Test
+    public void testParseKidTimestamp() {
+        assertEquals(Instant.parse("2026-01-02T03:04:05Z"), JwtKeyRing.parseKidTimestamp("20260102030405-ab12"));
+        assertEquals(Instant.parse("2026-01-02T03:04:05Z"), JwtKeyRing.parseKidTimestamp("20260102030405"));
+        assertNull(JwtKeyRing.parseKidTimestamp("legacy"));
+        assertNull(JwtKeyRing.parseKidTimestamp("20260102030405ab"));
+        assertNull(JwtKeyRing.parseKidTimestamp("20261399030405-ab12"));
+    }
+
+    private JwtKeyRing newKeyRing(LeaseService leaseService) {
+        JwtKeyRing ring = new JwtKeyRing();
+        ReflectionTestUtils.setField(ring, "leaseService", leaseService);
+        ReflectionTestUtils.setField(ring, "algorithm", JwtSigningAlgorithm.RS256);
+        ReflectionTestUtils.setField(ring, "keyDir", keyDir.toString());
+        ReflectionTestUtils.setField(ring, "keystorePath", "");
+        ReflectionTestUtils.setField(ring, "rotationEnabled", true);
+        ReflectionTestUtils.setField(ring, "rotationInterval", Duration.ofDays(30));
+        ReflectionTestUtils.setField(ring, "activationDelay", Duration.ofMinutes(10));
+        ReflectionTestUtils.setField(ring, "retention", Duration.ofDays(2));
+        return ring;
+    }
+
+    private long keyFileCount() throws Exception {
+        try (Stream<Path> files = Files.list(keyDir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".key")).count();
+        }
+    }
+
+    private int jwkCount() {
+        return ((List<?>) keyRing.getJwkSet().get("keys")).size();
+    }
+
+    private String writeKey(Instant createdAt) throws Exception {
+        String kid = KID_FORMAT.format(createdAt) + "-" + Integer.toHexString(createdAt.getNano() & 0xffff);
+        writeKey(kid, createdAt);
+        return kid;
+    }
+
+    private void writeKey(String kid, Instant fileTime) throws Exception {
+        KeyPair keyPair = JwtSigningAlgorithm.RS256.newKeyPair();
+        Path keyFile = keyDir.resolve(kid + ".key");
+        Files.writeString(keyDir.resolve(kid + ".pub"), toPem("PUBLIC KEY", keyPair.getPublic().getEncoded()), StandardCharsets.US_ASCII);
+        Files.writeString(keyFile, toPem("PRIVATE KEY", keyPair.getPrivate().getEncoded()), StandardCharsets.US_ASCII);
+        Files.setLastModifiedTime(keyFile, FileTime.from(fileTime));
+    }
+
+    private static String toPem(String type, byte[] der) {
+        return "-----BEGIN " + type + "-----\n" + Base64.getMimeEncoder().encodeToString(der) + "\n-----END " + type + "-----\n";
+    }
+}
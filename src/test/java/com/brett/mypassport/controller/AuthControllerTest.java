@@ -2,6 +2,7 @@ package com.brett.mypassport.controller;
 
 import com.brett.mypassport.dto.LoginRequest;
 import com.brett.mypassport.dto.LoginResponse;
+import com.brett.mypassport.service.RateLimitService;
 import com.brett.mypassport.service.UserService;
 import com.brett.mypassport.service.VerificationService;
 import com.brett.mypassport.common.JwtUtil; // In case we need to mock it, though simplified here
@@ -13,21 +14,32 @@ import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
+import com.brett.mypassport.dto.BatchPermissionCheckRequest;
+import com.brett.mypassport.dto.PermissionCheck;
+import com.brett.mypassport.dto.PermissionCheckResponse;
 import com.brett.mypassport.dto.ResetPasswordRequest;
 import com.brett.mypassport.dto.VerificationRequest;
 
+import java.util.List;
+import java.util.Map;
+
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import org.springframework.context.annotation.Import;
 import com.brett.mypassport.config.SecurityConfig;
-import com.brett.mypassport.config.RsaKeyProperties;
+import com.brett.mypassport.config.JwtKeyRing;
 
 @WebMvcTest(AuthController.class)
 @Import(SecurityConfig.class)
@@ -42,11 +54,14 @@ public class AuthControllerTest {
         @MockitoBean
         private VerificationService verificationService; // Required because AuthController injects it
 
+        @MockitoBean
+        private RateLimitService rateLimitService;
+
         @MockitoBean
         private JwtUtil jwtUtil;
 
         @MockitoBean
-        private RsaKeyProperties rsaKeyProperties;
+        private JwtKeyRing jwtKeyRing;
 
         @Autowired
         private ObjectMapper objectMapper;
@@ -93,6 +108,23 @@ public class AuthControllerTest {
                                 .andExpect(jsonPath("$.message").value("Invalid email or password."));
         }
 
+        @Test
+        public void testLoginRateLimited() throws Exception {
+                LoginRequest loginRequest = new LoginRequest();
+                loginRequest.setEmail("test@example.com");
+                loginRequest.setPassword("password123");
+
+                when(rateLimitService.tryAcquire(eq(RateLimitService.LOGIN), any(), eq("test@example.com"))).thenReturn(1500L);
+
+                mockMvc.perform(post("/api/v1/auth/login")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(loginRequest)))
+                                .andExpect(status().isTooManyRequests())
+                                .andExpect(header().string("Retry-After", "2"))
+                                .andExpect(jsonPath("$.code").value(429));
+
+                verify(userService, never()).login(any(), any(), any());
+        }
 
         @Test
         public void testForgotPasswordSuccess() throws Exception {
@@ -144,4 +176,94 @@ public class AuthControllerTest {
                                 .andExpect(jsonPath("$.code").value(400))
                                 .andExpect(jsonPath("$.message").value("Passwords do not match."));
         }
+
+        @Test
+        public void testCheckPermissionBatch() throws Exception {
+                PermissionCheck viewCheck = new PermissionCheck();
+                viewCheck.setRequiredPermission("dashboard:view");
+                PermissionCheck pathCheck = new PermissionCheck();
+                pathCheck.setPath("/api/v1/orders/42");
+                pathCheck.setMethod("DELETE");
+
+                BatchPermissionCheckRequest request = new BatchPermissionCheckRequest();
+                request.setTokens(List.of("token-1"));
+                request.setSysCode("SevWatch");
+                request.setChecks(List.of(viewCheck, pathCheck));
+
+                when(userService.checkPermissions(any(BatchPermissionCheckRequest.class))).thenReturn(List.of(
+                                new PermissionCheckResponse(true, true, "testuser", "Permission granted"),
+                                new PermissionCheckResponse(true, false, "testuser", "Permission denied")));
+
+                mockMvc.perform(post("/api/v1/auth/check-permission/batch")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(request)))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.code").value(200))
+                                .andExpect(jsonPath("$.data.length()").value(2))
+                                .andExpect(jsonPath("$.data[0].hasPermission").value(true))
+                                .andExpect(jsonPath("$.data[1].hasPermission").value(false));
+        }
+
+        @Test
+        public void testCheckPermissionBatchWithoutChecks() throws Exception {
+                BatchPermissionCheckRequest request = new BatchPermissionCheckRequest();
+                request.setTokens(List.of("token-1"));
+                request.setSysCode("SevWatch");
+                request.setChecks(List.of());
+
+                mockMvc.perform(post("/api/v1/auth/check-permission/batch")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(request)))
+                                .andExpect(status().isBadRequest())
+                                .andExpect(jsonPath("$.code").value(400))
+                                .andExpect(jsonPath("$.message").value("Checks cannot be empty"));
+        }
+
+        @Test
+        public void testCheckPermissionBatchWithEmptyCheck() throws Exception {
+                PermissionCheck methodOnly = new PermissionCheck();
+                methodOnly.setMethod("GET");
+
+                BatchPermissionCheckRequest request = new BatchPermissionCheckRequest();
+                request.setTokens(List.of("token-1"));
+                request.setSysCode("SevWatch");
+                request.setChecks(List.of(methodOnly));
+
+                mockMvc.perform(post("/api/v1/auth/check-permission/batch")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(request)))
+                                .andExpect(status().isBadRequest())
+                                .andExpect(jsonPath("$.code").value(400))
+                                .andExpect(jsonPath("$.message").value("Each check needs a requiredPermission or a path"));
+
+                mockMvc.perform(post("/api/v1/auth/check-permission/batch")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"tokens\":[\"token-1\"],\"sysCode\":\"SevWatch\",\"checks\":[null]}"))
+                                .andExpect(status().isBadRequest())
+                                .andExpect(jsonPath("$.code").value(400))
+                                .andExpect(jsonPath("$.message").value("Check cannot be null"));
+        }
+
+        @Test
+        public void testGetJwkSet() throws Exception {
+                Map<String, Object> jwk = Map.of("kty", "RSA", "kid", "key-1", "use", "sig", "alg", "RS256", "n", "abc", "e", "AQAB");
+                when(jwtKeyRing.getJwkSet()).thenReturn(Map.of("keys", List.of(jwk)));
+                when(jwtKeyRing.getJwkSetETag()).thenReturn("\"etag-1\"");
+
+                mockMvc.perform(get("/api/v1/auth/jwks"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"etag-1\""))
+                                .andExpect(header().string("Cache-Control", "max-age=300, public"))
+                                .andExpect(jsonPath("$.keys[0].kid").value("key-1"))
+                                .andExpect(jsonPath("$.code").doesNotExist());
+        }
+
+        @Test
+        public void testGetJwkSetNotModified() throws Exception {
+                when(jwtKeyRing.getJwkSetETag()).thenReturn("\"etag-1\"");
+
+                mockMvc.perform(get("/api/v1/auth/jwks").header("If-None-Match", "\"etag-1\""))
+                                .andExpect(status().isNotModified())
+                                .andExpect(header().string("ETag", "\"etag-1\""));
+        }
 }
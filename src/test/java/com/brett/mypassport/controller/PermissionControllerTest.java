@@ -1,6 +1,7 @@
 package com.brett.mypassport.controller;
 
 import com.brett.mypassport.dto.PermissionResponse;
+import com.brett.mypassport.dto.SliceResponse;
 import com.brett.mypassport.service.PermissionService;
 import com.brett.mypassport.common.JwtUtil;
 import com.brett.mypassport.common.PermissionConstants;
@@ -12,7 +13,7 @@ import org.springframework.context.annotation.Import;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
 import com.brett.mypassport.config.SecurityConfig;
-import com.brett.mypassport.config.RsaKeyProperties;
+import com.brett.mypassport.config.JwtKeyRing;
 
 import java.util.Arrays;
 import java.util.List;
@@ -20,6 +21,7 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
@@ -40,7 +42,7 @@ public class PermissionControllerTest {
     private JwtUtil jwtUtil;
 
     @MockitoBean
-    private RsaKeyProperties rsaKeyProperties;
+    private JwtKeyRing jwtKeyRing;
 
     @Test
     @WithMockUser(username = "admin", authorities = {PermissionConstants.PERMISSION_VIEW})
@@ -69,4 +71,25 @@ public class PermissionControllerTest {
                 .andExpect(jsonPath("$.data.content[0].name").value("USER_CREATE"))
                 .andExpect(jsonPath("$.data.content[1].name").value("PERMISSION_VIEW"));
     }
+
+    @Test
+    @WithMockUser(username = "admin", authorities = {PermissionConstants.PERMISSION_VIEW})
+    public void testScrollPermissions() throws Exception {
+        PermissionResponse perm = new PermissionResponse();
+        perm.setId(1L);
+        perm.setName("USER_CREATE");
+
+        SliceResponse<PermissionResponse> slice = new SliceResponse<>(List.of(perm), true, "next-cursor");
+
+        when(permissionService.scrollPermissions(any(), eq("cursor"), eq(5))).thenReturn(slice);
+
+        mockMvc.perform(get("/api/v1/permissions/scroll")
+                .param("cursor", "cursor")
+                .param("size", "5")
+                .with(csrf()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200))
+                .andExpect(jsonPath("$.data.content[0].name").value("USER_CREATE"))
+                .andExpect(jsonPath("$.data.nextCursor").value("next-cursor"));
+    }
 }
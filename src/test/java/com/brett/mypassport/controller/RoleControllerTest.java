@@ -2,6 +2,7 @@ package com.brett.mypassport.controller;
 
 import com.brett.mypassport.dto.RoleRequest;
 import com.brett.mypassport.dto.RoleResponse;
+import com.brett.mypassport.dto.SliceResponse;
 import com.brett.mypassport.service.RoleService;
 import com.brett.mypassport.common.JwtUtil;
 import com.brett.mypassport.common.PermissionConstants;
@@ -15,7 +16,7 @@ import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
 import com.brett.mypassport.config.SecurityConfig;
-import com.brett.mypassport.config.RsaKeyProperties;
+import com.brett.mypassport.config.JwtKeyRing;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
@@ -48,7 +49,7 @@ public class RoleControllerTest {
     private JwtUtil jwtUtil;
 
     @MockitoBean
-    private RsaKeyProperties rsaKeyProperties;
+    private JwtKeyRing jwtKeyRing;
 
     @Autowired
     private ObjectMapper objectMapper;
@@ -105,6 +106,26 @@ public class RoleControllerTest {
                 .andExpect(jsonPath("$.data.content[1].name").value("USER"));
     }
 
+    @Test
+    @WithMockUser(username = "admin", authorities = {PermissionConstants.ROLE_VIEW})
+    public void testScrollRoles() throws Exception {
+        RoleResponse role = new RoleResponse();
+        role.setId(1L);
+        role.setName("ADMIN");
+
+        SliceResponse<RoleResponse> slice = new SliceResponse<>(List.of(role), false, null);
+
+        when(roleService.scrollRoles(eq("sys-b"), any(), eq(10))).thenReturn(slice);
+
+        mockMvc.perform(get("/api/v1/roles/scroll")
+                .param("sysCode", "sys-b")
+                .with(csrf()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200))
+                .andExpect(jsonPath("$.data.content[0].name").value("ADMIN"))
+                .andExpect(jsonPath("$.data.hasNext").value(false));
+    }
+
     @Test
     @WithMockUser(username = "admin", authorities = {PermissionConstants.ROLE_VIEW})
     public void testGetRoleById() throws Exception {
@@ -21,7 +21,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 
-import com.brett.mypassport.config.RsaKeyProperties; // Depending on context if you need mock
+import com.brett.mypassport.config.JwtKeyRing;
 import com.brett.mypassport.config.SecurityConfig;
 import org.springframework.context.annotation.Import;
 
@@ -38,12 +38,12 @@ public class SystemControllerTest {
     @MockitoBean
     private DatabaseSeeder databaseSeeder;
 
-    // We mock JwtUtil and RsaKeyProperties to bypass the security configuration that looks for keys.
+    // We mock JwtUtil and JwtKeyRing to bypass the security configuration that looks for keys.
     @MockitoBean
     private JwtUtil jwtUtil;
 
     @MockitoBean
-    private RsaKeyProperties rsaKeyProperties;
+    private JwtKeyRing jwtKeyRing;
 
     @BeforeEach
     public void setUp() {
@@ -2,6 +2,7 @@ package com.brett.mypassport.controller;
 
 import com.brett.mypassport.dto.ChangePasswordRequest;
 import com.brett.mypassport.dto.DeviceResponse;
+import com.brett.mypassport.dto.SliceResponse;
 import com.brett.mypassport.dto.UserResponse;
 import com.brett.mypassport.dto.UserRoleRequest;
 import com.brett.mypassport.service.UserService;
@@ -23,6 +24,7 @@ import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
@@ -39,7 +41,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 
 import org.springframework.context.annotation.Import;
 import com.brett.mypassport.config.SecurityConfig;
-import com.brett.mypassport.config.RsaKeyProperties;
+import com.brett.mypassport.config.JwtKeyRing;
 
 import java.time.LocalDateTime;
 
@@ -57,7 +59,7 @@ public class UserControllerTest {
     private JwtUtil jwtUtil;
 
     @MockitoBean
-    private RsaKeyProperties rsaKeyProperties;
+    private JwtKeyRing jwtKeyRing;
 
     @Autowired
     private ObjectMapper objectMapper;
@@ -191,6 +193,40 @@ public class UserControllerTest {
                 .andExpect(jsonPath("$.data.content[0].username").value("testuser"));
     }
 
+    @Test
+    @WithMockUser(username = "admin", authorities = {PermissionConstants.USER_VIEW})
+    public void testScrollUsersSuccess() throws Exception {
+        UserResponse mockResponse = new UserResponse(
+                1L, "testuser", "test@example.com", null, LocalDateTime.now(), LocalDateTime.now(),
+                java.util.Collections.emptyMap(), java.util.Collections.emptyMap()
+        );
+        SliceResponse<UserResponse> slice = new SliceResponse<>(Arrays.asList(mockResponse), true, "next-cursor");
+
+        when(userService.scrollUsers(eq("cursor"), eq(10))).thenReturn(slice);
+
+        mockMvc.perform(get("/api/v1/users/scroll")
+                .param("cursor", "cursor")
+                .with(csrf()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200))
+                .andExpect(jsonPath("$.data.content[0].username").value("testuser"))
+                .andExpect(jsonPath("$.data.hasNext").value(true))
+                .andExpect(jsonPath("$.data.nextCursor").value("next-cursor"))
+                .andExpect(jsonPath("$.data.totalElements").doesNotExist());
+    }
+
+    @Test
+    @WithMockUser(username = "admin", authorities = {PermissionConstants.USER_VIEW})
+    public void testScrollUsersInvalidCursor() throws Exception {
+        when(userService.scrollUsers(eq("garbage"), anyInt())).thenThrow(new IllegalArgumentException("Invalid cursor"));
+
+        mockMvc.perform(get("/api/v1/users/scroll")
+                .param("cursor", "garbage")
+                .with(csrf()))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Invalid cursor"));
+    }
+
     @Test
     @WithMockUser(username = "admin", authorities = {PermissionConstants.USER_VIEW})
     public void testGetUserByIdSuccess() throws Exception {
@@ -0,0 +1,260 @@
+package com.brett.mypassport.service;
+
+import com.brett.mypassport.entity.EmailOutboxMessage;
+import com.brett.mypassport.repository.EmailOutboxRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Sends batches to an in-process SMTP server that accepts every recipient except the rejected ones.
+ */
+@ExtendWith(MockitoExtension.class)
+public class EmailOutboxServiceTest {
+
+    private static final String OWNER = "node-1/0";
+    private static final String GOOD = "alice@example.com";
+    private static final String BAD = "bob@example.com";
+
+    @Mock
+    private EmailOutboxRepository emailOutboxRepository;
+
+    @InjectMocks
+    private EmailOutboxService emailOutboxService;
+
+    private SmtpServer smtpServer;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        smtpServer = new SmtpServer();
+        JavaMailSenderImpl javaMailSender = new JavaMailSenderImpl();
+        javaMailSender.setHost("localhost");
+        javaMailSender.setPort(smtpServer.getPort());
+        meterRegistry = new SimpleMeterRegistry();
+        ReflectionTestUtils.setField(emailOutboxService, "javaMailSender", javaMailSender);
+        ReflectionTestUtils.setField(emailOutboxService, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(emailOutboxService, "fromEmail", "noreply@example.com");
+        ReflectionTestUtils.setField(emailOutboxService, "batchSize", 20);
+        ReflectionTestUtils.setField(emailOutboxService, "claimTimeout", Duration.ofMinutes(2));
+        ReflectionTestUtils.setField(emailOutboxService, "maxAttempts", 8);
+        ReflectionTestUtils.setField(emailOutboxService, "initialBackoff", Duration.ofSeconds(10));
+        ReflectionTestUtils.setField(emailOutboxService, "maxBackoff", Duration.ofMinutes(30));
+        // No worker threads; the tests send the batches themselves
+        ReflectionTestUtils.setField(emailOutboxService, "workers", 0);
+        emailOutboxService.init();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        smtpServer.close();
+    }
+
+    @Test
+    public void testBatchIsSentOverOneConnectionAndDeleted() {
+        claim(message(1L, GOOD, 0), message(2L, "carol@example.com", 0));
+
+        assertEquals(2, sendBatch());
+
+        // In no particular order
+        assertEquals(2, smtpServer.delivered.size());
+        assertEquals(Set.of(GOOD, "carol@example.com"), Set.copyOf(smtpServer.delivered));
+        assertEquals(1, smtpServer.connections.get());
+        verify(emailOutboxRepository).deleteAllByIdInBatch(
+                argThat(ids -> ids instanceof List<?> list && Set.copyOf(list).equals(Set.of(1L, 2L))));
+        assertEquals(2.0, meterRegistry.counter("mail.sent").count());
+    }
+
+    @Test
+    public void testFailedMessageIsRetriedWithBackoff() {
+        smtpServer.rejected.add(BAD);
+        claim(message(1L, GOOD, 0), message(2L, BAD, 0));
+
+        assertEquals(2, sendBatch());
+
+        // The rest of the batch is sent; the failed message is released for a retry after initial-backoff
+        assertEquals(List.of(GOOD), smtpServer.delivered);
+        verify(emailOutboxRepository).deleteAllByIdInBatch(List.of(1L));
+        verify(emailOutboxRepository).markFailed(eq(2L), eq(OWNER), eq("PENDING"), anyString(), eq(10L));
+
+        // The second failure waits twice as long
+        claim(message(2L, BAD, 1));
+        sendBatch();
+        verify(emailOutboxRepository).markFailed(eq(2L), eq(OWNER), eq("PENDING"), anyString(), eq(20L));
+
+        // Once the recipient accepts it, the retry is sent
+        smtpServer.rejected.clear();
+        claim(message(2L, BAD, 2));
+        sendBatch();
+        assertEquals(List.of(GOOD, BAD), smtpServer.delivered);
+        verify(emailOutboxRepository).deleteAllByIdInBatch(List.of(2L));
+        assertEquals(2.0, meterRegistry.counter("mail.send.failures").count());
+    }
+
+    @Test
+    public void testMessageIsDeadAfterMaxAttempts() {
+        smtpServer.rejected.add(BAD);
+        claim(message(2L, BAD, 7));
+
+        sendBatch();
+
+        verify(emailOutboxRepository).markFailed(eq(2L), eq(OWNER), eq("DEAD"), anyString(), eq(0L));
+        verify(emailOutboxRepository, never()).deleteAllByIdInBatch(anyList());
+        assertEquals(1.0, meterRegistry.counter("mail.dead_lettered").count());
+    }
+
+    @Test
+    public void testExpiredMessageIsDroppedInsteadOfSentOrRetried() {
+        smtpServer.rejected.add(BAD);
+        EmailOutboxMessage expired = message(1L, GOOD, 0);
+        expired.setNotAfter(LocalDateTime.now().minusSeconds(1));
+        // Still valid, but not by the retry 10 seconds later
+        EmailOutboxMessage expiring = message(2L, BAD, 0);
+        expiring.setNotAfter(LocalDateTime.now().plusSeconds(5));
+        claim(expired, expiring);
+
+        sendBatch();
+
+        assertTrue(smtpServer.delivered.isEmpty());
+        verify(emailOutboxRepository).deleteAllByIdInBatch(List.of(1L));
+        verify(emailOutboxRepository).deleteAllByIdInBatch(List.of(2L));
+        verify(emailOutboxRepository, never()).markFailed(anyLong(), anyString(), anyString(), anyString(), anyLong());
+        assertEquals(2.0, meterRegistry.counter("mail.expired").count());
+    }
+
+    private void claim(EmailOutboxMessage... batch) {
+        when(emailOutboxRepository.findClaimedBy(OWNER)).thenReturn(List.of(), List.of(batch));
+        when(emailOutboxRepository.claim(eq(OWNER), anyLong(), anyInt())).thenReturn(batch.length);
+    }
+
+    private int sendBatch() {
+        return ReflectionTestUtils.invokeMethod(emailOutboxService, "sendBatch", OWNER);
+    }
+
+    private static EmailOutboxMessage message(Long id, String recipient, int attempts) {
+        EmailOutboxMessage message = new EmailOutboxMessage();
+        message.setId(id);
+        message.setRecipient(recipient);
+        message.setSubject("Your Verification Code");
+        message.setBody("Your verification code is: 123456");
+        message.setAttempts(attempts);
+        message.setClaimedBy(OWNER);
+        return message;
+    }
+
+    /**
+     * Just enough SMTP for JavaMail: records the recipient of each delivered message.
+     */
+    private static class SmtpServer implements AutoCloseable {
+
+        final List<String> delivered = new CopyOnWriteArrayList<>();
+
+        final Set<String> rejected = ConcurrentHashMap.newKeySet();
+
+        final AtomicInteger connections = new AtomicInteger();
+
+        private final ServerSocket serverSocket = new ServerSocket(0);
+
+        SmtpServer() throws IOException {
+            Thread thread = new Thread(this::accept, "smtp-server");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        private void accept() {
+            while (!serverSocket.isClosed()) {
+                try (Socket socket = serverSocket.accept()) {
+                    connections.incrementAndGet();
+                    serve(socket);
+                } catch (IOException e) {
+                    // Closed
+                }
+            }
+        }
+
+        private void serve(Socket socket) throws IOException {
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.US_ASCII);
+            reply(out, "220 localhost");
+            String recipient = null;
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.toUpperCase();
+                if (command.startsWith("RCPT TO:")) {
+                    String address = line.substring(line.indexOf('<') + 1, line.indexOf('>'));
+                    if (rejected.contains(address)) {
+                        reply(out, "550 No such user");
+                    } else {
+                        recipient = address;
+                        reply(out, "250 OK");
+                    }
+                } else if (command.startsWith("DATA")) {
+                    reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                    String data;
+                    while ((data = in.readLine()) != null && !data.equals(".")) {
+                        // Skip the message
+                    }
+                    delivered.add(recipient);
+                    reply(out, "250 OK");
+                } else if (command.startsWith("QUIT")) {
+                    reply(out, "221 Bye");
+                    return;
+                } else {
+                    // EHLO, MAIL FROM, RSET, NOOP
+                    recipient = command.startsWith("MAIL") || command.startsWith("RSET") ? null : recipient;
+                    reply(out, "250 OK");
+                }
+            }
+        }
+
+        private static void reply(PrintWriter out, String line) {
+            out.print(line + "\r\n");
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+}
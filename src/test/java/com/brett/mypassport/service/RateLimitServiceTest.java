@@ -0,0 +1,162 @@
+package com.brett.mypassport.service;
+
+import com.brett.mypassport.common.TokenHashUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs the token-bucket script on a real Redis (REDIS_HOST/REDIS_PORT, localhost:6379 by default); skipped when none
+ * is reachable.
+ */
+public class RateLimitServiceTest {
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redisTemplate;
+
+    private RateLimitService rateLimitService;
+    private String ip;
+    private final List<String> emails = new ArrayList<>();
+
+    @BeforeAll
+    public static void connect() {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                System.getenv().getOrDefault("REDIS_HOST", "localhost"),
+                Integer.parseInt(System.getenv().getOrDefault("REDIS_PORT", "6379")));
+        connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    public static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    public void setUp() {
+        boolean reachable;
+        try {
+            reachable = "PONG".equals(redisTemplate.execute(connection -> connection.ping(), true));
+        } catch (RuntimeException e) {
+            reachable = false;
+        }
+        assumeTrue(reachable, "Redis is not reachable");
+
+        rateLimitService = new RateLimitService();
+        ReflectionTestUtils.setField(rateLimitService, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(rateLimitService, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(rateLimitService, "enabled", true);
+        ip = "rate-limit-test-" + UUID.randomUUID();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (ip != null) {
+            List<String> keys = new ArrayList<>();
+            keys.add(ipKey());
+            emails.forEach(email -> keys.add(emailKey(email)));
+            redisTemplate.delete(keys);
+        }
+    }
+
+    @Test
+    public void testBucketRefillsOverTime() throws InterruptedException {
+        limit(2, 100, Duration.ofSeconds(1));
+
+        assertEquals(0, rateLimitService.tryAcquire(RateLimitService.LOGIN, ip, null));
+        assertEquals(0, rateLimitService.tryAcquire(RateLimitService.LOGIN, ip, null));
+        long wait = rateLimitService.tryAcquire(RateLimitService.LOGIN, ip, null);
+        // One request back every 500 ms
+        assertTrue(wait > 0 && wait <= 500, "wait " + wait);
+
+        Thread.sleep(wait + 50);
+        assertEquals(0, rateLimitService.tryAcquire(RateLimitService.LOGIN, ip, null));
+        assertTrue(rateLimitService.tryAcquire(RateLimitService.LOGIN, ip, null) > 0);
+    }
+
+    @Test
+    public void testRejectedRequestsAreNotCharged() throws InterruptedException {
+        limit(1, 100, Duration.ofSeconds(1));
+
+        assertEquals(0, rateLimitService.tryAcquire(RateLimitService.LOGIN, ip, null));
+        long wait = rateLimitService.tryAcquire(RateLimitService.LOGIN, ip, null);
+        assertTrue(wait > 0);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rateLimitService.tryAcquire(RateLimitService.LOGIN, ip, null) > 0);
+        }
+
+        // Had the rejections taken tokens, the bucket would still be empty after the first wait
+        Thread.sleep(wait + 50);
+        assertEquals(0, rateLimitService.tryAcquire(RateLimitService.LOGIN, ip, null));
+    }
+
+    @Test
+    public void testIpAndEmailBucketsAreChargedTogether() {
+        limit(3, 2, Duration.ofHours(1));
+        String first = email();
+        String second = email();
+
+        assertEquals(0, rateLimitService.tryAcquire(RateLimitService.LOGIN, ip, first));
+        // Emails are compared regardless of case and surrounding spaces
+        assertEquals(0, rateLimitService.tryAcquire(RateLimitService.LOGIN, ip, " " + first.toUpperCase() + " "));
+        assertEquals("1", tokens(ipKey()));
+        assertEquals("0", tokens(emailKey(first)));
+
+        // The email bucket is empty, and the IP bucket is not charged for the rejected request
+        assertTrue(rateLimitService.tryAcquire(RateLimitService.LOGIN, ip, first) > 0);
+        assertEquals("1", tokens(ipKey()));
+
+        // Another email still has its own bucket, until the shared IP bucket runs out
+        assertEquals(0, rateLimitService.tryAcquire(RateLimitService.LOGIN, ip, second));
+        assertEquals("0", tokens(ipKey()));
+        assertEquals("1", tokens(emailKey(second)));
+        assertTrue(rateLimitService.tryAcquire(RateLimitService.LOGIN, ip, second) > 0);
+        assertEquals("1", tokens(emailKey(second)));
+    }
+
+    private void limit(int perIp, int perEmail, Duration period) {
+        ReflectionTestUtils.setField(rateLimitService, "loginPerIp", perIp);
+        ReflectionTestUtils.setField(rateLimitService, "loginPerEmail", perEmail);
+        ReflectionTestUtils.setField(rateLimitService, "loginPeriod", period);
+    }
+
+    private String email() {
+        String email = "rate-limit-test-" + UUID.randomUUID() + "@example.com";
+        emails.add(email);
+        return email;
+    }
+
+    private String ipKey() {
+        return "rate_limit:login:ip:" + ip;
+    }
+
+    private static String emailKey(String email) {
+        return "rate_limit:login:email:" + TokenHashUtil.sha256Hex(email);
+    }
+
+    /**
+     * Tokens left in the bucket, rounded down; an hour-long period refills nothing noticeable during the test.
+     */
+    private static String tokens(String key) {
+        Object tokens = redisTemplate.opsForHash().get(key, "tokens");
+        return tokens == null ? null : Long.toString((long) Math.floor(Double.parseDouble(tokens.toString())));
+    }
+}
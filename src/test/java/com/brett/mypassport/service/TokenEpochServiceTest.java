@@ -0,0 +1,100 @@
+package com.brett.mypassport.service;
+
+import com.brett.mypassport.entity.User;
+import com.brett.mypassport.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class TokenEpochServiceTest {
+
+    private static final String USERNAME = "alice";
+    private static final String KEY = "tokens_valid_after:" + USERNAME;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Mock
+    private RedisMessageListenerContainer listenerContainer;
+
+    @InjectMocks
+    private TokenEpochService tokenEpochService;
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(tokenEpochService, "cacheTtl", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(tokenEpochService, "cacheMaxSize", 100L);
+        ReflectionTestUtils.setField(tokenEpochService, "redisTtl", Duration.ofDays(1));
+        tokenEpochService.init();
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    public void testFailedRedisWriteDeletesCopyAndDatabaseWins() {
+        long before = System.currentTimeMillis() / 1000 - 60;
+        User user = new User();
+        user.setUsername(USERNAME);
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any()))
+                .thenThrow(new RedisConnectionFailureException("Redis is down"));
+        when(redisTemplate.delete(KEY)).thenThrow(new RedisConnectionFailureException("Redis is down"));
+
+        tokenEpochService.revokeAll(user);
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        verify(redisTemplate).delete(KEY);
+
+        // Redis is back with the copy from before the bump
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get(KEY)).thenReturn(Long.toString(before));
+        when(userRepository.findTokensValidAfterByUsername(USERNAME)).thenReturn(Optional.of(user.getTokensValidAfter()));
+
+        assertEquals(user.getTokensValidAfter(), tokenEpochService.getValidAfter(USERNAME));
+        assertTrue(tokenEpochService.isRevoked(USERNAME, before + 1));
+    }
+
+    @Test
+    public void testLaterRedisCopyWinsOverDatabase() {
+        // E.g. a concurrent save of a user loaded before the bump wrote the older epoch back
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get(KEY)).thenReturn("2000");
+        when(userRepository.findTokensValidAfterByUsername(USERNAME)).thenReturn(Optional.of(1000L));
+
+        assertEquals(2000L, tokenEpochService.getValidAfter(USERNAME));
+        assertTrue(tokenEpochService.isRevoked(USERNAME, 1999));
+        assertFalse(tokenEpochService.isRevoked(USERNAME, 2000));
+    }
+}
@@ -0,0 +1,307 @@
+package com.brett.mypassport.service;
+
+import com.brett.mypassport.common.JwtClaims;
+import com.brett.mypassport.common.JwtUtil;
+import com.brett.mypassport.config.BoundedPasswordEncoder;
+import com.brett.mypassport.dto.PermissionCheckRequest;
+import com.brett.mypassport.dto.RefreshTokenRequest;
+import com.brett.mypassport.dto.RegisterRequest;
+import com.brett.mypassport.dto.ResetPasswordRequest;
+import com.brett.mypassport.entity.Token;
+import com.brett.mypassport.entity.User;
+import com.brett.mypassport.repository.TokenRepository;
+import com.brett.mypassport.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class UserServiceTest {
+
+    private static final String USERNAME = "alice";
+    private static final String TOKEN = "access-token";
+    private static final String REFRESH_TOKEN = "refresh-token";
+    private static final String SYS_CODE = "SYS";
+    private static final String PERMISSION = "order:read";
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private VerificationService verificationService;
+
+    @Mock
+    private PasswordEncoder passwordEncoder;
+
+    @Mock
+    private JwtUtil jwtUtil;
+
+    @Mock
+    private TokenRepository tokenRepository;
+
+    @Mock
+    private TokenRevocationService tokenRevocationService;
+
+    @Mock
+    private TokenEpochService tokenEpochService;
+
+    @Mock
+    private AuthorityVersionService authorityVersionService;
+
+    @Mock
+    private EffectivePermissionService effectivePermissionService;
+
+    @InjectMocks
+    private UserService userService;
+
+    private PermissionDecisionCacheService decisionCache;
+
+    private JwtClaims claims;
+
+    @BeforeEach
+    public void setUp() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        PermissionMatcherService matcherService = new PermissionMatcherService();
+        ReflectionTestUtils.setField(matcherService, "authorityVersionService", authorityVersionService);
+        ReflectionTestUtils.setField(matcherService, "effectivePermissionService", effectivePermissionService);
+        ReflectionTestUtils.setField(matcherService, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(matcherService, "maxSize", 100L);
+        ReflectionTestUtils.setField(matcherService, "ttl", Duration.ofMinutes(10));
+        matcherService.init();
+
+        decisionCache = new PermissionDecisionCacheService();
+        ReflectionTestUtils.setField(decisionCache, "tokenRevocationService", tokenRevocationService);
+        ReflectionTestUtils.setField(decisionCache, "authorityVersionService", authorityVersionService);
+        ReflectionTestUtils.setField(decisionCache, "tokenEpochService", tokenEpochService);
+        ReflectionTestUtils.setField(decisionCache, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(decisionCache, "maxSize", 100L);
+        decisionCache.init();
+
+        ReflectionTestUtils.setField(userService, "permissionMatcherService", matcherService);
+        ReflectionTestUtils.setField(userService, "permissionDecisionCacheService", decisionCache);
+        ReflectionTestUtils.setField(userService, "refreshReuseGracePeriod", Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void testDecisionIsRecomputedWhenGrantsChangeDuringCheck() {
+        mockSessionToken();
+        AtomicInteger version = new AtomicInteger(1);
+        when(authorityVersionService.getCurrentVersion(USERNAME)).thenAnswer(invocation -> version.get());
+        // The permission is granted while the first check is still reading the old grants
+        when(effectivePermissionService.getSnapshot(USERNAME, 1)).thenAnswer(invocation -> {
+            version.set(2);
+            return snapshot(1, Set.of());
+        });
+        when(effectivePermissionService.getSnapshot(USERNAME, 2)).thenReturn(snapshot(2, Set.of(PERMISSION)));
+
+        assertFalse(userService.checkPermission(request()).isHasPermission());
+        assertTrue(userService.checkPermission(request()).isHasPermission());
+        // The recomputed decision is the one cached from then on
+        assertTrue(userService.checkPermission(request()).isHasPermission());
+        verify(effectivePermissionService, times(1)).getSnapshot(USERNAME, 2);
+    }
+
+    @Test
+    public void testDecisionsAreDroppedWhenGrantsChange() {
+        mockSessionToken();
+        AtomicInteger version = new AtomicInteger(1);
+        when(authorityVersionService.getCurrentVersion(USERNAME)).thenAnswer(invocation -> version.get());
+        when(effectivePermissionService.getSnapshot(USERNAME, 1)).thenReturn(snapshot(1, Set.of(PERMISSION)));
+        when(effectivePermissionService.getSnapshot(USERNAME, 2)).thenReturn(snapshot(2, Set.of()));
+
+        assertTrue(userService.checkPermission(request()).isHasPermission());
+        assertTrue(userService.checkPermission(request()).isHasPermission());
+        // Only a miss validates the token
+        verify(claims, times(1)).isExpired();
+
+        // The permission is revoked: the cached decision no longer matches the version and is recomputed
+        version.set(2);
+        assertFalse(userService.checkPermission(request()).isHasPermission());
+        verify(claims, times(2)).isExpired();
+    }
+
+    @Test
+    public void testReplayedRefreshTokenRevokesFamily() {
+        // Already rotated: revoked, and the parent of the session that replaced it
+        Token rotated = refreshTokenRow(true);
+        when(tokenRepository.findByRefreshTokenHash(any())).thenReturn(Optional.of(rotated));
+        when(tokenRepository.findRotatedAtByParentId(rotated.getId())).thenReturn(LocalDateTime.now().minusMinutes(1));
+        when(tokenRepository.findValidSessionIdsByFamilyId("family-1")).thenReturn(List.of("session-2"));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> userService.refreshToken(refreshRequest()));
+        assertEquals("Refresh token reuse detected", e.getMessage());
+        verify(tokenRepository).revokeAllByFamilyId(eq("family-1"), any());
+        verify(tokenRevocationService).revokeSessionNow(eq("session-2"), anyLong());
+    }
+
+    @Test
+    public void testConcurrentRefreshIsRejectedWithoutRevokingFamily() {
+        Token current = refreshTokenRow(false);
+        when(tokenRepository.findByRefreshTokenHash(any())).thenReturn(Optional.of(current));
+        when(jwtUtil.validateToken(REFRESH_TOKEN, USERNAME)).thenReturn(true);
+        claims = mock(JwtClaims.class);
+        when(claims.getIssuedAt()).thenReturn(new Date());
+        when(jwtUtil.parseToken(REFRESH_TOKEN)).thenReturn(claims);
+        // Another request with the same token revoked it first
+        when(tokenRepository.revokeById(eq(current.getId()), any())).thenReturn(0);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> userService.refreshToken(refreshRequest()));
+        assertEquals("Refresh token is expired or revoked", e.getMessage());
+        verify(tokenRepository, never()).revokeAllByFamilyId(anyString(), any());
+        verify(tokenRevocationService, never()).revokeSession(anyString(), anyLong());
+        verify(tokenRevocationService, never()).revokeSessionNow(anyString(), anyLong());
+        verify(jwtUtil, never()).generateRefreshToken(anyString(), anyString());
+    }
+
+    @Test
+    public void testDuplicateRefreshAfterRotationIsRejectedWithoutRevokingFamily() {
+        // The duplicate read the row after the winning refresh committed: revoked, with a replacement just created
+        Token rotated = refreshTokenRow(true);
+        when(tokenRepository.findByRefreshTokenHash(any())).thenReturn(Optional.of(rotated));
+        when(tokenRepository.findRotatedAtByParentId(rotated.getId())).thenReturn(LocalDateTime.now().minusSeconds(1));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> userService.refreshToken(refreshRequest()));
+        assertEquals("Refresh token is expired or revoked", e.getMessage());
+        verify(tokenRepository, never()).revokeAllByFamilyId(anyString(), any());
+        verify(tokenRevocationService, never()).revokeSessionNow(anyString(), anyLong());
+    }
+
+    @Test
+    public void testLogoutSucceedsWithoutRedis() {
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        when(redisTemplate.opsForZSet()).thenThrow(new RedisConnectionFailureException("Redis is down"));
+        TokenRevocationService revocations = new TokenRevocationService();
+        ReflectionTestUtils.setField(revocations, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(revocations, "listenerContainer", mock(RedisMessageListenerContainer.class));
+        ReflectionTestUtils.setField(revocations, "expectedEntries", 100);
+        ReflectionTestUtils.setField(revocations, "falsePositiveRate", 0.01);
+        revocations.init();
+        ReflectionTestUtils.setField(userService, "tokenRevocationService", revocations);
+
+        Token current = refreshTokenRow(false);
+        when(tokenRepository.findByTokenHash(any())).thenReturn(Optional.of(current));
+        when(tokenRepository.revokeById(eq(current.getId()), any())).thenReturn(1);
+        when(jwtUtil.getMaxTokenLifetime()).thenReturn(3_600_000L);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            assertDoesNotThrow(() -> userService.logout(TOKEN));
+            // Nothing is revoked unless the transaction commits
+            assertFalse(revocations.isRevoked("session-1"));
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertTrue(revocations.isRevoked("session-1"));
+    }
+
+    @Test
+    public void testRegisterKeepsCodeWhenHashingIsSaturated() {
+        RegisterRequest request = new RegisterRequest();
+        request.setUsername(USERNAME);
+        request.setEmail("alice@example.com");
+        request.setPassword("secret123");
+        request.setVerificationCode("123456");
+        when(passwordEncoder.encode("secret123")).thenThrow(new BoundedPasswordEncoder.SaturatedException());
+
+        assertThrows(BoundedPasswordEncoder.SaturatedException.class, () -> userService.registerUser(request));
+        verify(verificationService, never()).consumeCode(anyString(), anyString());
+        verify(userRepository, never()).save(any());
+    }
+
+    @Test
+    public void testResetPasswordKeepsCodeWhenHashingIsSaturated() {
+        ResetPasswordRequest request = new ResetPasswordRequest();
+        request.setEmail("alice@example.com");
+        request.setVerificationCode("123456");
+        request.setNewPassword("secret123");
+        request.setConfirmPassword("secret123");
+        when(passwordEncoder.encode("secret123")).thenThrow(new BoundedPasswordEncoder.SaturatedException());
+
+        assertThrows(BoundedPasswordEncoder.SaturatedException.class, () -> userService.resetPassword(request));
+        verify(verificationService, never()).consumeCode(anyString(), anyString());
+        verify(userRepository, never()).save(any());
+    }
+
+    private void mockSessionToken() {
+        claims = mock(JwtClaims.class);
+        when(claims.getSubject()).thenReturn(USERNAME);
+        when(claims.getSessionId()).thenReturn("session-1");
+        when(claims.getIssuedAt()).thenReturn(new Date());
+        when(claims.getExpiration()).thenReturn(new Date(System.currentTimeMillis() + 60_000));
+        when(jwtUtil.parseToken(TOKEN)).thenReturn(claims);
+        when(tokenRevocationService.isSynced()).thenReturn(true);
+    }
+
+    private static Token refreshTokenRow(boolean revoked) {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername(USERNAME);
+        Token token = new Token();
+        token.setId(10L);
+        token.setUser(user);
+        token.setSessionId("session-1");
+        token.setFamilyId("family-1");
+        token.setRevoked(revoked);
+        token.setRefreshExpiresAt(LocalDateTime.now().plusDays(1));
+        return token;
+    }
+
+    private static RefreshTokenRequest refreshRequest() {
+        RefreshTokenRequest request = new RefreshTokenRequest();
+        request.setRefreshToken(REFRESH_TOKEN);
+        return request;
+    }
+
+    private static PermissionCheckRequest request() {
+        PermissionCheckRequest request = new PermissionCheckRequest();
+        request.setToken(TOKEN);
+        request.setSysCode(SYS_CODE);
+        request.setRequiredPermission(PERMISSION);
+        return request;
+    }
+
+    private static EffectivePermissionService.Snapshot snapshot(int version, Set<String> permissions) {
+        return new EffectivePermissionService.Snapshot(version,
+                Map.of(SYS_CODE, new EffectivePermissionService.SystemGrants(Set.of(), permissions, permissions)));
+    }
+}
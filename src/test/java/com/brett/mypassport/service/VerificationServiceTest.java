@@ -0,0 +1,164 @@
+package com.brett.mypassport.service;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Runs the verification scripts on a real Redis (REDIS_HOST/REDIS_PORT, localhost:6379 by default); skipped when
+ * none is reachable.
+ */
+public class VerificationServiceTest {
+
+    private static final String INVALID = "Invalid or expired verification code.";
+    private static final String EXHAUSTED = "Too many invalid attempts. Please request a new verification code.";
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redisTemplate;
+
+    private EmailService emailService;
+    private VerificationService verificationService;
+    private String email;
+
+    @BeforeAll
+    public static void connect() {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                System.getenv().getOrDefault("REDIS_HOST", "localhost"),
+                Integer.parseInt(System.getenv().getOrDefault("REDIS_PORT", "6379")));
+        connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    public static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    public void setUp() {
+        boolean reachable;
+        try {
+            reachable = "PONG".equals(redisTemplate.execute(connection -> connection.ping(), true));
+        } catch (RuntimeException e) {
+            reachable = false;
+        }
+        assumeTrue(reachable, "Redis is not reachable");
+
+        emailService = mock(EmailService.class);
+        verificationService = new VerificationService();
+        ReflectionTestUtils.setField(verificationService, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(verificationService, "emailService", emailService);
+        ReflectionTestUtils.setField(verificationService, "maxAttempts", 3);
+        email = "verification-test-" + UUID.randomUUID() + "@example.com";
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (email != null) {
+            redisTemplate.delete(List.of(codeKey(), attemptsKey()));
+        }
+    }
+
+    @Test
+    public void testCodeIsSingleUse() {
+        String code = sendCode();
+
+        assertDoesNotThrow(() -> verificationService.consumeCode(email, code));
+        assertEquals(INVALID, assertThrows(IllegalArgumentException.class,
+                () -> verificationService.consumeCode(email, code)).getMessage());
+    }
+
+    @Test
+    public void testCodeIsDiscardedAfterMaxAttempts() {
+        String code = sendCode();
+        String wrong = wrongCode(code);
+
+        assertEquals(INVALID, assertThrows(IllegalArgumentException.class,
+                () -> verificationService.consumeCode(email, wrong)).getMessage());
+        assertEquals(INVALID, assertThrows(IllegalArgumentException.class,
+                () -> verificationService.consumeCode(email, wrong)).getMessage());
+        assertEquals(EXHAUSTED, assertThrows(IllegalArgumentException.class,
+                () -> verificationService.consumeCode(email, wrong)).getMessage());
+        // The right code no longer works either
+        assertEquals(INVALID, assertThrows(IllegalArgumentException.class,
+                () -> verificationService.consumeCode(email, code)).getMessage());
+        assertFalse(redisTemplate.hasKey(attemptsKey()));
+    }
+
+    @Test
+    public void testAttemptCounterExpiresWithCode() throws InterruptedException {
+        String code = sendCode();
+        redisTemplate.expire(codeKey(), Duration.ofMillis(300));
+
+        assertThrows(IllegalArgumentException.class, () -> verificationService.consumeCode(email, wrongCode(code)));
+        Long attemptsTtl = redisTemplate.getExpire(attemptsKey(), TimeUnit.MILLISECONDS);
+        assertTrue(attemptsTtl != null && attemptsTtl > 0 && attemptsTtl <= 300, "attempts TTL " + attemptsTtl);
+
+        Thread.sleep(500);
+        assertFalse(redisTemplate.hasKey(codeKey()));
+        assertFalse(redisTemplate.hasKey(attemptsKey()));
+    }
+
+    @Test
+    public void testNewCodeResetsAttempts() {
+        String first = sendCode();
+        assertThrows(IllegalArgumentException.class, () -> verificationService.consumeCode(email, wrongCode(first)));
+        assertThrows(IllegalArgumentException.class, () -> verificationService.consumeCode(email, wrongCode(first)));
+
+        String second = sendCode();
+        assertFalse(redisTemplate.hasKey(attemptsKey()));
+        assertEquals(INVALID, assertThrows(IllegalArgumentException.class,
+                () -> verificationService.consumeCode(email, wrongCode(second))).getMessage());
+        assertDoesNotThrow(() -> verificationService.consumeCode(email, second));
+    }
+
+    /**
+     * Request a code and read it from the email.
+     */
+    private String sendCode() {
+        ArgumentCaptor<String> content = ArgumentCaptor.forClass(String.class);
+        verificationService.sendVerificationCode(email);
+        verify(emailService, atLeastOnce()).sendSimpleMessage(eq(email), anyString(), content.capture(), eq(Duration.ofSeconds(60)));
+        String text = content.getValue();
+        int start = text.indexOf(": ") + 2;
+        return text.substring(start, start + 6);
+    }
+
+    private static String wrongCode(String code) {
+        return code.equals("123456") ? "654321" : "123456";
+    }
+
+    private String codeKey() {
+        return "verification_code:" + email;
+    }
+
+    private String attemptsKey() {
+        return "verification_code_attempts:" + email;
+    }
+}